@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.ease.debugging.IScriptDebugFrame;
+import org.eclipse.ease.debugging.events.ResumedEvent;
+import org.eclipse.ease.debugging.events.SuspendedEvent;
+import org.eclipse.ease.lang.python.jython.debugger.CompiledCodeCache;
+import org.eclipse.ease.lang.python.jython.debugger.EventChannel;
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+
+/**
+ * Stand-in for JythonDebugger usable without a running workbench.
+ *
+ * Implements the callbacks Edb uses the same way JythonDebugger does,
+ * breakpoints are kept in a simple per-file map instead of a BreakpointIndex.
+ * Events are posted through the real EventChannel to a StandInDispatcher.
+ *
+ * @author kloeschmartin
+ */
+public class BenchmarkDebugger {
+	private static final String PySetBreakpointCmd = "set_break";
+	private static final String PyClearBreakpointsCmd = "clear_all_file_breaks";
+
+	private final PyObject mPyDebugger;
+	private final StandInDispatcher mDispatcher = new StandInDispatcher();
+	private final EventChannel mChannel = new EventChannel(mDispatcher);
+
+	/**
+	 * Breakpoints and per-file versions, guarded by this.
+	 */
+	private final Map<String, List<StubBreakpoint>> mBreakpoints = new HashMap<String, List<StubBreakpoint>>();
+	private final Map<String, Long> mFileVersions = new HashMap<String, Long>();
+	private long mVersion = 0;
+
+	/**
+	 * Constructor only stores Edb object.
+	 *
+	 * @param pyDebugger: Edb object callbacks are answered for.
+	 */
+	public BenchmarkDebugger(final PyObject pyDebugger) {
+		mPyDebugger = pyDebugger;
+	}
+
+	// ************************************************************
+	// Callbacks used by Edb
+	// ************************************************************
+
+	public void fireSuspendEvent(final Thread thread, final List<IScriptDebugFrame> stack, final int detail) {
+		mChannel.post(new SuspendedEvent(detail, thread, stack));
+	}
+
+	public synchronized long getBreakpointVersion() {
+		return mVersion;
+	}
+
+	public long syncBreakpoints(final long sinceVersion) {
+		long version;
+		Map<String, List<StubBreakpoint>> changed = new HashMap<String, List<StubBreakpoint>>();
+		synchronized (this) {
+			version = mVersion;
+			for (Map.Entry<String, Long> entry : mFileVersions.entrySet()) {
+				if (entry.getValue() > sinceVersion)
+					changed.put(entry.getKey(), new ArrayList<StubBreakpoint>(mBreakpoints.get(entry.getKey())));
+			}
+		}
+
+		for (Map.Entry<String, List<StubBreakpoint>> entry : changed.entrySet()) {
+			mPyDebugger.invoke(PyClearBreakpointsCmd, new PyString(entry.getKey()));
+			for (StubBreakpoint breakpoint : entry.getValue())
+				mPyDebugger.invoke(PySetBreakpointCmd, Py.java2py(breakpoint));
+		}
+		return version;
+	}
+
+	public PyObject getCompiledCode(final String filename) {
+		try {
+			return CompiledCodeCache.getCode(filename);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	// ************************************************************
+	// Control methods used by benchmarks
+	// ************************************************************
+
+	/**
+	 * Replaces all breakpoints of a file.
+	 *
+	 * @param filename: absolute filename.
+	 * @param lines: line numbers to set breakpoints on.
+	 */
+	public synchronized void setBreakpoints(final String filename, final int... lines) {
+		List<StubBreakpoint> breakpoints = new ArrayList<StubBreakpoint>(lines.length);
+		for (int line : lines)
+			breakpoints.add(new StubBreakpoint(filename, line));
+		mBreakpoints.put(filename, breakpoints);
+		touch(filename);
+	}
+
+	/**
+	 * Replaces all breakpoints of a file with a single logpoint.
+	 *
+	 * @param filename: absolute filename.
+	 * @param line: line number to set logpoint on.
+	 * @param logMessage: message expression of logpoint.
+	 */
+	public synchronized void setLogpoint(final String filename, final int line, final String logMessage) {
+		List<StubBreakpoint> breakpoints = new ArrayList<StubBreakpoint>(1);
+		breakpoints.add(new StubBreakpoint(filename, line, logMessage));
+		mBreakpoints.put(filename, breakpoints);
+		touch(filename);
+	}
+
+	/**
+	 * Marks breakpoints of a file as changed without modifying them.
+	 *
+	 * @param filename: absolute filename.
+	 */
+	public synchronized void touch(final String filename) {
+		mFileVersions.put(filename, ++mVersion);
+	}
+
+	/**
+	 * Resumes a suspended thread as JythonDebugger.handleResumeRequest does.
+	 *
+	 * @param command: Edb step command (step_continue, step_stepover, ...).
+	 * @param thread: thread to be resumed.
+	 * @param type: DebugEvent detail of ResumedEvent.
+	 */
+	public void resume(final String command, final Thread thread, final int type) {
+		mPyDebugger.invoke(command, Py.java2py(thread));
+		mChannel.post(new ResumedEvent(thread, type));
+	}
+
+	/**
+	 * Waits until a thread suspends and its SuspendedEvent passed the event channel.
+	 *
+	 * @return SuspendedEvent received by the stand-in dispatcher.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public SuspendedEvent awaitSuspend() throws InterruptedException {
+		return mDispatcher.awaitSuspend();
+	}
+}
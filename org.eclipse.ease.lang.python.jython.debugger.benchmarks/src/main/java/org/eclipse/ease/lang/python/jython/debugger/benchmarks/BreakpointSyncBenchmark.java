@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.python.core.Py;
+import org.python.core.PyObject;
+
+/**
+ * Cost of Edb._sync_breakpoints (replacement of checkBreakpoints) depending on
+ * the number of breakpoints in the synced file.
+ *
+ *  * unchanged: version check only, done on every file switch and resume.
+ *  * fileChanged: one file's breakpoints changed and are reset in Edb.
+ *
+ * @author kloeschmartin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BreakpointSyncBenchmark {
+	@Param({ "10", "100", "1000", "10000" })
+	public int breakpoints;
+
+	private DebugSession mSession;
+	private PyObject mSync;
+	private String mFilename;
+
+	@Setup
+	public void setup() throws Exception {
+		mSession = new DebugSession();
+		mFilename = mSession.writeScript("breakpoints.py", "pass\n");
+
+		int[] lines = new int[breakpoints];
+		for (int index = 0; index < lines.length; index++)
+			lines[index] = index + 1;
+		mSession.getDebugger().setBreakpoints(mFilename, lines);
+
+		mSession.getPyDebugger().invoke("set_debugger", Py.java2py(mSession.getDebugger()));
+		mSync = mSession.getPyDebugger().__getattr__("_sync_breakpoints");
+		mSync.__call__();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mSession.stop();
+	}
+
+	@Benchmark
+	public void unchanged() {
+		mSync.__call__();
+	}
+
+	@Benchmark
+	public void fileChanged() {
+		mSession.getDebugger().touch(mFilename);
+		mSync.__call__();
+	}
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.ease.debugging.IScriptDebugFrame;
+import org.eclipse.ease.debugging.events.SuspendedEvent;
+import org.eclipse.ease.lang.python.jython.debugger.BreakpointTable;
+import org.eclipse.ease.lang.python.jython.debugger.CompiledCodeCache;
+import org.eclipse.ease.lang.python.jython.debugger.JythonTracer;
+import org.eclipse.ease.lang.python.jython.debugger.LogpointBuffer;
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.core.PySystemState;
+import org.python.util.InteractiveInterpreter;
+
+/**
+ * Jython interpreter with Edb set up as JythonDebuggerEngine does, but
+ * connected to a BenchmarkDebugger instead of a JythonDebugTarget.
+ *
+ * Scripts are written to a temporary directory that is used as workspace root.
+ *
+ * @author kloeschmartin
+ */
+public class DebugSession {
+	/**
+	 * System property for plugin's python directory.
+	 */
+	public static final String PY_DIR_PROPERTY = "benchmark.pyDir";
+
+	/**
+	 * Default python directory when run from benchmark module directory.
+	 */
+	private static final String DEFAULT_PY_DIR = "../org.eclipse.ease.lang.python.jython.debugger/python";
+
+	/**
+	 * Helper to read the stack of another suspended thread.
+	 * Edb keeps stack state per thread, so the suspended context is copied to the calling thread.
+	 */
+	private static final String PyHelpers = "def _stack_trace_of(debugger, thread):\n"
+			+ "    suspended = debugger._contexts_for(thread)[0]\n"
+			+ "    debugger._current_frame = suspended.current_frame\n"
+			+ "    debugger.botframe = suspended.botframe\n"
+			+ "    return debugger._get_stack_trace()\n";
+
+	private final PySystemState mState;
+	private final InteractiveInterpreter mInterpreter;
+	private final PyObject mPyDebugger;
+	private final BenchmarkDebugger mDebugger;
+	private final LogpointBuffer mLogpointBuffer;
+	private final File mWorkspace;
+
+	private Thread mScriptThread = null;
+	private Thread mSuspendedThread = null;
+
+	public DebugSession() throws IOException {
+		this(true);
+	}
+
+	/**
+	 * Constructor sets up interpreter and Edb.
+	 *
+	 * @param javaTracer: true to trace with JythonTracer as JythonDebugger does,
+	 *                    false to use bdb.Bdb's Python trace function.
+	 * @throws IOException if temporary workspace cannot be created.
+	 */
+	public DebugSession(final boolean javaTracer) throws IOException {
+		mWorkspace = File.createTempFile("jython-debugger-benchmark", "");
+		if (!mWorkspace.delete() || !mWorkspace.mkdirs())
+			throw new IOException("Could not create " + mWorkspace);
+
+		mState = new PySystemState();
+		mState.path.insert(0, new PyString(new File(System.getProperty(PY_DIR_PROPERTY, DEFAULT_PY_DIR)).getAbsolutePath()));
+		Py.setSystemState(mState);
+
+		mInterpreter = new InteractiveInterpreter(null, mState);
+		mInterpreter.exec("import edb");
+		mInterpreter.exec(PyHelpers);
+		mPyDebugger = mInterpreter.eval("edb.Edb()");
+		mDebugger = new BenchmarkDebugger(mPyDebugger);
+		mPyDebugger.invoke("set_workspace_root", new PyString(mWorkspace.getAbsolutePath()));
+		mLogpointBuffer = new LogpointBuffer(new PrintStream(new OutputStream() {
+			@Override
+			public void write(final int b) {
+				// logged messages are not of interest, only the cost of logging them
+			}
+		}));
+		mPyDebugger.invoke("set_logpoint_buffer", Py.java2py(mLogpointBuffer));
+		if (javaTracer) {
+			BreakpointTable table = new BreakpointTable();
+			mPyDebugger.invoke("set_breakpoint_table", Py.java2py(table));
+			mPyDebugger.invoke("set_tracer", Py.java2py(new JythonTracer(mPyDebugger, table, null, null)));
+		}
+	}
+
+	public BenchmarkDebugger getDebugger() {
+		return mDebugger;
+	}
+
+	public PyObject getPyDebugger() {
+		return mPyDebugger;
+	}
+
+	/**
+	 * Writes script to session's workspace.
+	 *
+	 * @param name: filename relative to workspace.
+	 * @param source: Python source code.
+	 * @return absolute filename of script.
+	 * @throws IOException if file cannot be written.
+	 */
+	public String writeScript(final String name, final String source) throws IOException {
+		File file = new File(mWorkspace, name);
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(source.getBytes("UTF-8"));
+		} finally {
+			output.close();
+		}
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * Runs script without debugger as JythonScriptEngine would.
+	 *
+	 * @param filename: absolute filename of script.
+	 * @throws IOException if script cannot be compiled.
+	 */
+	public void runPlain(final String filename) throws IOException {
+		Py.setSystemState(mState);
+		mInterpreter.exec(CompiledCodeCache.getCode(filename));
+	}
+
+	/**
+	 * Runs script in debugger in calling thread as JythonDebuggerEngine.execute does.
+	 *
+	 * @param filename: absolute filename of script.
+	 */
+	public void runDebug(final String filename) {
+		Py.setSystemState(mState);
+		mPyDebugger.invoke("set_debugger", Py.java2py(mDebugger));
+		mPyDebugger.invoke("run", new PyString(filename));
+	}
+
+	/**
+	 * Starts script in debugger in a new thread and waits until it suspends.
+	 *
+	 * @param filename: absolute filename of script, needs to hit a breakpoint.
+	 * @return SuspendedEvent of first suspend.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public SuspendedEvent start(final String filename) throws InterruptedException {
+		mScriptThread = new Thread("Jython debugger benchmark script") {
+			@Override
+			public void run() {
+				try {
+					runDebug(filename);
+				} catch (Exception e) {
+					// BdbQuit on stop
+				}
+			}
+		};
+		mScriptThread.setDaemon(true);
+		mScriptThread.start();
+		return awaitSuspend();
+	}
+
+	/**
+	 * Resumes suspended script thread and waits until it suspends again.
+	 *
+	 * @param command: Edb step command (step_continue, step_stepover, ...).
+	 * @param type: DebugEvent detail of ResumedEvent.
+	 * @return SuspendedEvent of next suspend.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public SuspendedEvent resume(final String command, final int type) throws InterruptedException {
+		mDebugger.resume(command, mSuspendedThread, type);
+		return awaitSuspend();
+	}
+
+	/**
+	 * Builds stack of suspended script thread as Edb does on suspend.
+	 *
+	 * @return List of JythonDebugFrames.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<IScriptDebugFrame> getStackTrace() {
+		Py.setSystemState(mState);
+		PyObject helper = mInterpreter.get("_stack_trace_of");
+		return (List<IScriptDebugFrame>) helper.__call__(mPyDebugger, Py.java2py(mSuspendedThread)).__tojava__(List.class);
+	}
+
+	/**
+	 * Terminates script thread and removes session's workspace.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for script thread.
+	 */
+	public void stop() throws InterruptedException {
+		if (mScriptThread != null) {
+			mDebugger.resume("step_quit", null, DebugEvent.UNSPECIFIED);
+			mScriptThread.join();
+			mScriptThread = null;
+		}
+
+		File[] files = mWorkspace.listFiles();
+		if (files != null) {
+			for (File file : files)
+				file.delete();
+		}
+		mWorkspace.delete();
+		mLogpointBuffer.close();
+		mInterpreter.cleanup();
+	}
+
+	private SuspendedEvent awaitSuspend() throws InterruptedException {
+		SuspendedEvent event = mDebugger.awaitSuspend();
+		mSuspendedThread = event.getThread();
+		return event;
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.ease.debugging.IScriptDebugFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of Edb._get_stack_trace depending on stack depth and number of locals.
+ *
+ *  * capture: stack as built on every suspend.
+ *  * captureAndExpandTop: additionally converts locals of top frame,
+ *    as done when the Variables view shows the selected frame.
+ *
+ * @author kloeschmartin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StackTraceBenchmark {
+	@Param({ "1", "10", "100" })
+	public int depth;
+
+	@Param({ "10", "100", "1000" })
+	public int locals;
+
+	private DebugSession mSession;
+
+	@Setup
+	public void setup() throws Exception {
+		mSession = new DebugSession();
+
+		// recurse() has the given number of locals, breakpoint on its last line
+		StringBuilder script = new StringBuilder("def recurse(depth):\n");
+		for (int index = 0; index < locals; index++)
+			script.append("    v").append(index).append(" = ").append(index).append('\n');
+		script.append("    if depth > 1:\n");
+		script.append("        return recurse(depth - 1)\n");
+		script.append("    return depth\n");
+		int breakpointLine = locals + 4;
+		script.append("\nrecurse(").append(depth).append(")\n");
+
+		String filename = mSession.writeScript("stack_trace.py", script.toString());
+		mSession.getDebugger().setBreakpoints(filename, breakpointLine);
+		mSession.start(filename);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mSession.stop();
+	}
+
+	@Benchmark
+	public List<IScriptDebugFrame> capture() {
+		return mSession.getStackTrace();
+	}
+
+	@Benchmark
+	public int captureAndExpandTop() {
+		return mSession.getStackTrace().get(0).getVariables().size();
+	}
+}
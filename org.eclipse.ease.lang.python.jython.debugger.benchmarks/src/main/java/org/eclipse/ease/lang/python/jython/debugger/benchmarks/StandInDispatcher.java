@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.ease.debugging.EventDispatchJob;
+import org.eclipse.ease.debugging.events.IDebugEvent;
+import org.eclipse.ease.debugging.events.SuspendedEvent;
+
+/**
+ * EventDispatchJob stand-in taking the place of the debug target.
+ *
+ * Never scheduled, SuspendedEvents are handed to the benchmark thread
+ * instead of being processed by a JythonDebugTarget.
+ *
+ * @author kloeschmartin
+ */
+public class StandInDispatcher extends EventDispatchJob {
+	/**
+	 * Maximum time to wait for a suspend before a benchmark is considered broken.
+	 */
+	private static final long TIMEOUT_SECONDS = 60;
+
+	private final BlockingQueue<SuspendedEvent> mSuspensions = new LinkedBlockingQueue<SuspendedEvent>();
+
+	public StandInDispatcher() {
+		super(null, null);
+	}
+
+	@Override
+	public void addEvent(final IDebugEvent event) {
+		if (event instanceof SuspendedEvent)
+			mSuspensions.offer((SuspendedEvent) event);
+	}
+
+	/**
+	 * Waits for next SuspendedEvent.
+	 *
+	 * @return SuspendedEvent as it would have reached the debug target.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public SuspendedEvent awaitSuspend() throws InterruptedException {
+		SuspendedEvent event = mSuspensions.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		if (event == null)
+			throw new IllegalStateException("Script did not suspend within " + TIMEOUT_SECONDS + " seconds");
+		return event;
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.ease.debugging.events.SuspendedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip latency from a resume request until the next SuspendedEvent
+ * reached the (stand-in) dispatcher.
+ *
+ * The script loops forever with a breakpoint in the loop body:
+ *  * resumeToBreakpoint: continue until breakpoint is hit again,
+ *    i.e. breakpoint-hit-to-SuspendedEvent latency plus one loop iteration.
+ *  * stepOver: step over one line, every second step skips a call of helper().
+ *
+ * @author kloeschmartin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StepLatencyBenchmark {
+	private static final String SCRIPT = "def helper(n):\n"
+			+ "    total = 0\n"
+			+ "    for i in xrange(n):\n"
+			+ "        total += i\n"
+			+ "    return total\n"
+			+ "\n"
+			+ "i = 0\n"
+			+ "while True:\n"
+			+ "    i += 1\n"
+			+ "    helper(%d)\n";
+
+	private static final int BREAKPOINT_LINE = 9;
+
+	/**
+	 * Number of loop iterations in helper(), i.e. work stepped over.
+	 */
+	@Param({ "10", "10000" })
+	public int helperIterations;
+
+	private DebugSession mSession;
+
+	@Setup
+	public void setup() throws Exception {
+		mSession = new DebugSession();
+		String filename = mSession.writeScript("step_latency.py", String.format(SCRIPT, helperIterations));
+		mSession.getDebugger().setBreakpoints(filename, BREAKPOINT_LINE);
+		mSession.start(filename);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mSession.stop();
+	}
+
+	@Benchmark
+	public SuspendedEvent resumeToBreakpoint() throws Exception {
+		return mSession.resume("step_continue", DebugEvent.CLIENT_REQUEST);
+	}
+
+	@Benchmark
+	public SuspendedEvent stepOver() throws Exception {
+		return mSession.resume("step_stepover", DebugEvent.STEP_OVER);
+	}
+}
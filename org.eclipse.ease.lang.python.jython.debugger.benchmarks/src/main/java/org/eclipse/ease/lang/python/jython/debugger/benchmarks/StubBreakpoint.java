@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+/**
+ * Stand-in for BreakpointInfo without IBreakpoint/marker behind it.
+ *
+ * Edb.set_break only uses the getter methods, so this can be passed instead.
+ *
+ * @author kloeschmartin
+ */
+public class StubBreakpoint {
+	private final String mFilename;
+	private final int mLinenumber;
+	private final String mLogMessage;
+
+	public StubBreakpoint(final String filename, final int linenumber) {
+		this(filename, linenumber, null);
+	}
+
+	/**
+	 * Constructor for logpoints.
+	 *
+	 * @param filename: absolute filename.
+	 * @param linenumber: line of logpoint.
+	 * @param logMessage: message expression, null for a suspending breakpoint.
+	 */
+	public StubBreakpoint(final String filename, final int linenumber, final String logMessage) {
+		mFilename = filename;
+		mLinenumber = linenumber;
+		mLogMessage = logMessage;
+	}
+
+	// ************************************************************
+	// Getter methods as in BreakpointInfo
+	// ************************************************************
+	public String getFilename() {
+		return mFilename;
+	}
+
+	public int getLinenumber() {
+		return mLinenumber;
+	}
+
+	public String getCondition() {
+		return null;
+	}
+
+	public int getHitcount() {
+		return 0;
+	}
+
+	public boolean getTemporary() {
+		return false;
+	}
+
+	public String getLogMessage() {
+		return mLogMessage;
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-line trace overhead of a debug run compared to running the same script plainly.
+ *
+ * Modes:
+ *  * plain: no debugger, as JythonScriptEngine runs scripts.
+ *  * debug: Edb with a breakpoint in another file only, continuing after startup.
+ *  * debugPythonTracer: as debug, but traced by bdb.Bdb's Python trace function
+ *    instead of JythonTracer.
+ *  * breakpointInFile: Edb with a never hit breakpoint in the script file,
+ *    so frames of that file cannot skip tracing by file alone.
+ *  * logpointInLoop: Edb with a logpoint in the loop, every iteration
+ *    evaluates and buffers a message without suspending.
+ *
+ * All debug modes set at least one breakpoint: without any, bdb.Bdb.set_continue
+ * removes the trace function and the script would run untraced.
+ *
+ * @author kloeschmartin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TraceOverheadBenchmark {
+	/**
+	 * Script executing 2 lines per loop iteration, unused() is never called.
+	 */
+	private static final String SCRIPT = "def compute(n):\n"
+			+ "    total = 0\n"
+			+ "    for i in xrange(n):\n"
+			+ "        total += i * i % 7\n"
+			+ "    return total\n"
+			+ "\n"
+			+ "def unused():\n"
+			+ "    return 0\n"
+			+ "\n"
+			+ "compute(%d)\n";
+
+	private static final int UNUSED_LINE = 8;
+
+	private static final int LOOP_LINE = 4;
+
+	/**
+	 * Script that is never run, holds the breakpoint keeping tracing enabled.
+	 */
+	private static final String OTHER_SCRIPT = "def other():\n"
+			+ "    return 0\n";
+
+	private static final int OTHER_LINE = 2;
+
+	@Param({ "plain", "debug", "debugPythonTracer", "breakpointInFile", "logpointInLoop" })
+	public String mode;
+
+	@Param({ "100000" })
+	public int lines;
+
+	private DebugSession mSession;
+	private String mFilename;
+
+	@Setup
+	public void setup() throws Exception {
+		mSession = new DebugSession(!"debugPythonTracer".equals(mode));
+		mFilename = mSession.writeScript("trace_overhead.py", String.format(SCRIPT, lines / 2));
+		if ("debug".equals(mode) || "debugPythonTracer".equals(mode))
+			mSession.getDebugger().setBreakpoints(mSession.writeScript("other.py", OTHER_SCRIPT), OTHER_LINE);
+		else if ("breakpointInFile".equals(mode))
+			mSession.getDebugger().setBreakpoints(mFilename, UNUSED_LINE);
+		else if ("logpointInLoop".equals(mode))
+			mSession.getDebugger().setLogpoint(mFilename, LOOP_LINE, "total");
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		mSession.stop();
+	}
+
+	@Benchmark
+	public void runScript() throws Exception {
+		if ("plain".equals(mode))
+			mSession.runPlain(mFilename);
+		else
+			mSession.runDebug(mFilename);
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.ease.debugging.IScriptDebugFrame;
+import org.eclipse.ease.debugging.events.EngineTerminatedEvent;
+import org.eclipse.ease.debugging.events.IDebugEvent;
+import org.eclipse.ease.debugging.events.ResumedEvent;
+import org.eclipse.ease.debugging.events.SuspendedEvent;
+import org.junit.Test;
+
+/**
+ * Tests for EventChannel.coalesce.
+ *
+ * @author kloeschmartin
+ */
+public class EventChannelTest {
+	private final Thread mThread1 = new Thread("thread 1");
+	private final Thread mThread2 = new Thread("thread 2");
+
+	private static SuspendedEvent suspended(final Thread thread) {
+		return new SuspendedEvent(DebugEvent.STEP_END, thread, Collections.<IScriptDebugFrame> emptyList());
+	}
+
+	private static ResumedEvent resumed(final Thread thread) {
+		return new ResumedEvent(thread, DebugEvent.STEP_OVER);
+	}
+
+	private static List<IDebugEvent> coalesce(final IDebugEvent... events) {
+		return EventChannel.coalesce(new ArrayList<IDebugEvent>(Arrays.asList(events)));
+	}
+
+	@Test
+	public void emptyBatch() {
+		assertEquals(Collections.emptyList(), coalesce());
+	}
+
+	@Test
+	public void singleSuspendIsKept() {
+		SuspendedEvent suspend = suspended(mThread1);
+		assertEquals(Arrays.asList(suspend), coalesce(suspend));
+	}
+
+	@Test
+	public void stepSequenceCollapsesToLastSuspend() {
+		SuspendedEvent last = suspended(mThread1);
+		assertEquals(Arrays.asList(last), coalesce(resumed(mThread1), suspended(mThread1), resumed(mThread1), suspended(mThread1), resumed(mThread1), last));
+	}
+
+	@Test
+	public void trailingResumeIsKept() {
+		SuspendedEvent suspend = suspended(mThread1);
+		ResumedEvent resume = resumed(mThread1);
+		assertEquals(Arrays.asList(suspend, resume), coalesce(suspended(mThread1), resumed(mThread1), suspend, resume));
+	}
+
+	@Test
+	public void resumeFollowedByOtherEventIsKept() {
+		ResumedEvent resume = resumed(mThread1);
+		EngineTerminatedEvent terminated = new EngineTerminatedEvent();
+		assertEquals(Arrays.asList(resume, terminated), coalesce(resume, terminated));
+	}
+
+	@Test
+	public void threadsAreCoalescedIndependently() {
+		SuspendedEvent suspend1 = suspended(mThread1);
+		SuspendedEvent suspend2 = suspended(mThread2);
+		ResumedEvent resume2 = resumed(mThread2);
+
+		List<IDebugEvent> result = coalesce(suspended(mThread1), resumed(mThread1), resumed(mThread2), suspend1, suspend2, resume2);
+		assertEquals(Arrays.<IDebugEvent> asList(suspend1, suspend2, resume2), result);
+	}
+
+	@Test
+	public void resumeDroppedWhenOwnThreadSuspendsAfterOtherThreadsEvents() {
+		SuspendedEvent suspend2 = suspended(mThread2);
+		SuspendedEvent suspend1 = suspended(mThread1);
+		assertEquals(Arrays.<IDebugEvent> asList(suspend2, suspend1), coalesce(resumed(mThread1), suspend2, suspend1));
+	}
+}
@@ -0,0 +1,111 @@
+'''
+Copyright (c) 2014 Martin Kloesch
+All rights reserved. This program and the accompanying materials
+are made available under the terms of the Eclipse Public License v1.0
+which accompanies this distribution, and is available at
+http://www.eclipse.org/legal/epl-v10.html
+
+Contributors:
+ * Martin Kloesch - initial API and implementation
+'''
+# Python std library imports
+import _ast
+
+#: Key of module level code object.
+MODULE_KEY = '<module>:0'
+
+
+def code_lines(filename):
+    '''
+    Collects the lines each code object of a file traces.
+
+    Used by the coverage tracer to find out when all lines of a code object
+    have been seen, so it can stop tracing it.
+
+    Code objects are identified by "name:first line", module level code
+    by MODULE_KEY. Decorated functions and classes are registered with the
+    line of the definition and the line of the first decorator, since it
+    depends on the interpreter which one is the first line of the code.
+
+    :param filename: absolute path of Python file.
+    :returns: dict mapping code keys to sorted lists of line numbers,
+              empty dict if file cannot be parsed.
+    '''
+    try:
+        source_file = open(filename)
+        try:
+            source = source_file.read()
+        finally:
+            source_file.close()
+        tree = compile(source, filename, 'exec', _ast.PyCF_ONLY_AST)
+    except (IOError, SyntaxError):
+        return {}
+
+    result = {}
+    _add_code(result, [MODULE_KEY], tree.body)
+    return result
+
+
+def _add_code(result, keys, body):
+    '''
+    Adds lines of a code object's body to result.
+
+    Docstrings do not create a line event and are skipped.
+    '''
+    if body and _is_docstring(body[0]):
+        body = body[1:]
+
+    lines = set()
+    _visit(result, body, lines)
+    lines = sorted(lines)
+    for key in keys:
+        result[key] = lines
+
+
+def _is_docstring(node):
+    '''
+    Checks if statement is a string literal expression.
+    '''
+    if not isinstance(node, _ast.Expr):
+        return False
+    if hasattr(_ast, 'Str'):
+        return isinstance(node.value, _ast.Str)
+    return isinstance(node.value, _ast.Constant) and isinstance(node.value.value, str)
+
+
+def _visit(result, value, lines):
+    '''
+    Collects statement lines of value into lines and adds nested code objects to result.
+    '''
+    if isinstance(value, list):
+        for item in value:
+            _visit(result, item, lines)
+
+    elif isinstance(value, _ast.stmt):
+        # global statements create no code
+        if isinstance(value, _ast.Global):
+            return
+        lines.add(value.lineno)
+
+        if isinstance(value, (_ast.FunctionDef, _ast.ClassDef)):
+            # everything but the body is evaluated by the enclosing code
+            decorators = getattr(value, 'decorator_list', None) or getattr(value, 'decorators', None) or []
+            for field in value._fields:
+                if field != 'body':
+                    _visit(result, getattr(value, field, None), lines)
+
+            keys = ['%s:%d' % (value.name, value.lineno)]
+            if decorators:
+                keys.append('%s:%d' % (value.name, decorators[0].lineno))
+            _add_code(result, keys, value.body)
+        else:
+            for field in value._fields:
+                _visit(result, getattr(value, field, None), lines)
+
+    elif isinstance(value, _ast.Lambda):
+        result['<lambda>:%d' % value.lineno] = [value.lineno]
+        _visit(result, value.body, lines)
+
+    elif isinstance(value, _ast.AST):
+        for field in value._fields:
+            _visit(result, getattr(value, field, None), lines)
@@ -12,6 +12,10 @@ Contributors:
 import bdb
 import threading
 import os
+import sys
+
+# Debugger helper modules
+import module_tracker
 
 # Eclipse imports for communication with framework  
 import org.eclipse.ease.debug.core
@@ -21,26 +25,111 @@ import org.eclipse.ease.lang.python.jython.debugger
 import java.lang
 import java.util
 
+#: Classifications of filenames used by Edb._classify_file
+FILE_WORKSPACE = 0
+FILE_LIBRARY = 1
+FILE_BUILTIN = 2
+
+#: Suspend policies used by Edb.set_suspend_policy
+SUSPEND_THREAD = 0
+SUSPEND_ALL = 1
+
+
+class _ThreadContext(object):
+    '''
+    Debug state of a single thread.
+    
+    Each thread being debugged has its own context so it can suspend, 
+    step and resume independently of all other threads.
+    '''
+    def __init__(self, thread, first=False):
+        '''
+        Constructor sets up necessary members.
+        
+        :param java.lang.Thread thread: Thread this context belongs to.
+        :param bool first: True if first line should be handled as startup.
+        '''
+        self.thread = thread
+        self.first = first
+        
+        #: member storing current frame object while breakpoint hit.
+        self.current_frame = None
+        self.current_file = None
+        
+        #: member storing "step" function to be called after breakpoint.
+        #: :note: This member is set by another thread.
+        #:        use Edb._step_lock threading.Lock object to assure thread safety.
+        self.step_func = None
+        self.step_param = None
+        self.continue_event = threading.Event()
+        self.suspended = False
+        
+        #: Flag set by other threads if this thread should suspend as well.
+        self.suspend_requested = False
+        
+        #: Flag set by break_here to tell user_line why it was called.
+        self.hit_breakpoint = False
+        
+        #: Total time in ns spent waiting for user input, excluded from trace timing.
+        self.wait_time = 0
+        
+        #: JythonTraceFunction installed for this thread, None if Python tracing is used.
+        self.tracer = None
+        
+        #: bdb.Bdb step state, bdb starts in stepping mode.
+        self.stepping = True
+        self.botframe = None
+        self.stopframe = None
+        self.returnframe = None
+        self.stoplineno = 0
+        
+        #: Number of breakpoint bdb.Bdb.break_here found last in this thread.
+        self.currentbp = None
+
+
+def _context_property(name):
+    '''
+    Helper function creating property that redirects to _ThreadContext
+    of calling thread.
+    
+    Used to make bdb.Bdb's step state thread-local without changing bdb.
+    '''
+    def getter(self):
+        return getattr(self._context(), name)
+    def setter(self, value):
+        setattr(self._context(), name, value)
+    return property(getter, setter)
+
          
-class Edb(bdb.Bdb):
+class Edb(bdb.Bdb, object):
     '''
     Eclipse Debugger class.
      
-    Inherits from bdb.Bdb and threading.Thread
+    Inherits from bdb.Bdb, new-style class to allow per-thread properties.
      
-    Used to have safe cross-thread debugging functionality
+    Used to have safe cross-thread debugging functionality.
+    Each thread has its own _ThreadContext, bdb.Bdb's step state is 
+    redirected to the context of the calling thread.
     '''
+    #: bdb.Bdb step state per thread
+    botframe = _context_property('botframe')
+    stopframe = _context_property('stopframe')
+    returnframe = _context_property('returnframe')
+    stoplineno = _context_property('stoplineno')
+    
+    #: Breakpoint hit last, per thread so logpoints hit concurrently are not mixed up.
+    currentbp = _context_property('currentbp')
+    
     #: member storing current frame object while breakpoint hit.
-    #: :note: This member is accessed by several threads, always use
-    #:        _frame_lock threading.Lock object to assure thread-safety.
-    _current_frame = None
-    _current_file = None
-     
-    #: member storing "step" function to be called after breakpoint.
-    #: :note: Once again, this member is used by multiple threads.
-    #:        use _step_lock threading.Lock object to assure thread safety.
-    _step_func = None
-    _step_param = None
+    #: :note: This member is per thread, use _frame_lock to access it from other threads.
+    _current_frame = _context_property('current_frame')
+    _current_file = _context_property('current_file')
+    
+    #: Flag to signalize if a step command is active in current thread.
+    _stepping = _context_property('stepping')
+    
+    #: Policy if only the breaking thread or all threads should suspend.
+    _suspend_policy = SUSPEND_THREAD
     
     #: Flag to signalize if debugger should suspend on startup
     _suspend_on_startup = False
@@ -48,19 +137,96 @@ class Edb(bdb.Bdb):
     #: Flag to signalize if debugger should suspend when new script is loaded.
     #: Not in use yet
     _suspend_on_script_load = False
+    
+    #: Version of JythonDebugger's breakpoint set last synced to bdb.Bdb.
+    #: Only changed files need to be resynced when the version differs.
+    _breakpoint_version = 0
+    
+    #: Absolute path of workspace root to classify filenames.
+    _workspace_root = None
+    
+    #: Cache mapping co_filename to FILE_WORKSPACE, FILE_LIBRARY or FILE_BUILTIN.
+    #: Avoids os.path.exists calls on hot paths. Cleared by JythonDebugger
+    #: on workspace resource changes.
+    _file_cache = None
+    
+    #: Cache mapping breakpoint condition strings to compiled code objects.
+    #: Conditions are evaluated on every hit so they are only compiled once.
+    _condition_cache = None
+    
+    #: JythonDebuggerMetrics object if trace callbacks should be timed, None otherwise.
+    _metrics = None
+    
+    #: JythonTracer handling the hot path of tracing in Java.
+    #: If None, bdb.Bdb's Python trace function is used.
+    _tracer = None
+    
+    #: BreakpointTable mirroring the lines of self.breaks as bitsets.
+    #: Shared with JythonTracer, None if no table was set.
+    _breakpoint_table = None
+    
+    #: LogpointBuffer messages of logpoints are appended to.
+    #: If None, logpoints neither suspend nor log.
+    _logpoint_buffer = None
+    
+    #: Cache storing for each code object if it could ever stop while 
+    #: continuing (i.e. if its file has a breakpoint in its line range).
+    #: :note: Only valid as long as breakpoints and step state do not change,
+    #:        use _invalidate_trace_cache whenever one of them does.
+    _trace_cache = None
 
     def __init__(self, breakpoints=[]):
         '''
         Constructor calls base class's constructor and
         sets up necessary members.
         '''
+        # Thread contexts have to exist before bdb.Bdb accesses step state
+        self._local = threading.local()
+        self._contexts = {}
+        self._contexts_lock = threading.RLock()
+        
         bdb.Bdb.__init__(self)
-        self._continue_event = threading.Event()
          
         # RLocks can be acquired multiple times by same thread.
         # Should actually not make a difference but better safe than sorry
         self._frame_lock = threading.RLock()
         self._step_lock = threading.RLock()
+        
+        # Serializes breakpoint syncs of concurrently tracing threads
+        self._breakpoint_lock = threading.Lock()
+        
+        self._trace_cache = {}
+        self._file_cache = {}
+        self._condition_cache = {}
+
+    def _context(self):
+        '''
+        Getter method for _ThreadContext of calling thread.
+        
+        Creates new context on first access.
+        '''
+        try:
+            return self._local.context
+        except AttributeError:
+            context = _ThreadContext(java.lang.Thread.currentThread())
+            self._local.context = context
+            with self._contexts_lock:
+                self._contexts[context.thread] = context
+            return context
+
+    def _contexts_for(self, thread):
+        '''
+        Helper method to get contexts an execution command applies to.
+        
+        :param java.lang.Thread thread: Thread to get context for, 
+                                        None for all threads.
+        :returns: list of matching _ThreadContext objects.
+        '''
+        with self._contexts_lock:
+            if thread is None:
+                return list(self._contexts.values())
+            context = self._contexts.get(thread)
+            return [context] if context else []
 
     def set_debugger(self,debugger):
         '''
@@ -74,6 +240,154 @@ class Edb(bdb.Bdb):
         '''
         self._debugger = debugger
 
+    def set_workspace_root(self, root):
+        '''
+        Setter method for self._workspace_root.
+        
+        :param str root: Absolute path of workspace root.
+        '''
+        self._workspace_root = os.path.normcase(os.path.abspath(root))
+        self.clear_file_cache()
+
+    def clear_file_cache(self):
+        '''
+        Clears cached filename classifications.
+        
+        Called by JythonDebugger when workspace resources were added or removed.
+        '''
+        self._file_cache = {}
+
+    def _classify_file(self, filename):
+        '''
+        Classifies filename as workspace file, library file or builtin.
+        
+        Result is cached so the filesystem is only accessed once per file.
+        
+        :param str filename: filename as given in co_filename.
+        :returns: FILE_WORKSPACE, FILE_LIBRARY or FILE_BUILTIN.
+        '''
+        file_type = self._file_cache.get(filename)
+        if file_type is None:
+            # <string>, <stdin> etc. and files that do not exist are builtins
+            if not filename or filename.startswith('<') or not os.path.exists(filename):
+                file_type = FILE_BUILTIN
+            elif self._in_workspace(filename):
+                file_type = FILE_WORKSPACE
+            else:
+                file_type = FILE_LIBRARY
+            self._file_cache[filename] = file_type
+        return file_type
+
+    def _in_workspace(self, filename):
+        '''
+        Checks if file is located inside the workspace root.
+        
+        Only whole path segments are compared, a workspace at /ws does
+        not contain /ws2/lib.py.
+        
+        :param str filename: filename as given in co_filename.
+        :returns: True if file is inside workspace root.
+        '''
+        root = self._workspace_root
+        if not root:
+            return False
+        path = os.path.normcase(os.path.abspath(filename))
+        return path == root or path.startswith(root.rstrip(os.sep) + os.sep)
+
+    def set_metrics(self, metrics):
+        '''
+        Setter method for trace timing metrics.
+        
+        Timing replaces trace_dispatch of this instance so there is no 
+        overhead at all if metrics are disabled.
+        
+        :param org.eclipse.ease.lang.python.jython.debugger.JythonDebuggerMetrics metrics:
+            metrics object to report trace callback times to, None to disable timing.
+        '''
+        self._metrics = metrics
+        if metrics is None:
+            self.__dict__.pop('trace_dispatch', None)
+        else:
+            self.trace_dispatch = self._timed_trace_dispatch
+
+    def _timed_trace_dispatch(self, frame, event, arg):
+        '''
+        Wraps bdb.Bdb.trace_dispatch and reports time spent in each callback.
+        
+        Time spent suspended waiting for user input is not counted.
+        '''
+        context = self._context()
+        waited = context.wait_time
+        start = java.lang.System.nanoTime()
+        try:
+            return bdb.Bdb.trace_dispatch(self, frame, event, arg)
+        finally:
+            elapsed = java.lang.System.nanoTime() - start - (context.wait_time - waited)
+            metrics = self._metrics
+            if metrics is not None:
+                metrics.traceCallback(event, elapsed)
+
+    def set_tracer(self, tracer):
+        '''
+        Setter method for Java tracer.
+        
+        :param org.eclipse.ease.lang.python.jython.debugger.JythonTracer tracer:
+            tracer to be installed on run, None to use Python tracing.
+        '''
+        self._tracer = tracer
+
+    def set_breakpoint_table(self, table):
+        '''
+        Setter method for breakpoint table.
+        
+        :param org.eclipse.ease.lang.python.jython.debugger.BreakpointTable table:
+            table to mirror breakpoint lines to, None to disable.
+        '''
+        self._breakpoint_table = table
+        self._publish_breaks()
+
+    def set_logpoint_buffer(self, buffer):
+        '''
+        Setter method for logpoint buffer.
+        
+        :param org.eclipse.ease.lang.python.jython.debugger.LogpointBuffer buffer:
+            buffer for messages of logpoints, None to drop them.
+        '''
+        self._logpoint_buffer = buffer
+
+    def _publish_breaks(self):
+        '''
+        Rebuilds breakpoint table from self.breaks.
+        
+        Only needed when self.breaks is replaced, single changes are
+        published by set_break and clear_* methods.
+        '''
+        table = self._breakpoint_table
+        if table is None:
+            return
+        table.clear()
+        for filename, lines in self.breaks.items():
+            for lineno in lines:
+                table.add(filename, lineno)
+
+    def _update_tracer(self, context):
+        '''
+        Mirrors step state of thread context to its JythonTraceFunction.
+        
+        :param _ThreadContext context: context whose step state changed.
+        '''
+        if context.tracer is not None:
+            context.tracer.setStepping(context.stepping)
+
+    def set_suspend_policy(self, policy):
+        '''
+        Setter method for suspend policy.
+        
+        :param int policy: SUSPEND_THREAD to only suspend thread hitting 
+                           breakpoint, SUSPEND_ALL to suspend all threads.
+        '''
+        self._suspend_policy = policy
+
     def set_suspend_on_startup(self, suspend):
         '''
         Setter method for suspend_on_startup flag.
@@ -101,9 +415,16 @@ class Edb(bdb.Bdb):
     def set_break(self, breakpoint):
         '''
         Sets a new breakpoint with the given BreakpointInfo.
-        If a breakpoint already exists old breakpoint will be deleted.
+        If a breakpoint already exists it will be updated in place.
      
         Overrides bdb.Bdb to use EASE BreakpointInfo class.
+        
+        Conditions are precompiled so bdb.effective does not have to parse 
+        them on every hit. Hit counts are handled using bdb's ignore count 
+        so non-matching hits never reach user_line.
+        
+        Breakpoints with a log message are logpoints, they append the
+        evaluated message to the logpoint buffer instead of suspending.
          
         :param org.eclipse.ease.lang.python.jython.debugger.BreakpointInfo breakpoint:
             BreakpointInfo object containing all necessary information.
@@ -112,19 +433,63 @@ class Edb(bdb.Bdb):
         filename = breakpoint.getFilename()
         lineno = breakpoint.getLinenumber()
         temporary = breakpoint.getTemporary()
-        cond = breakpoint.getCondition()
+        cond = self._compile_condition(breakpoint.getCondition())
         hitcount = breakpoint.getHitcount()
+        log_message = self._compile_condition(breakpoint.getLogMessage())
         funcname = None
         
-        # Just to be sure delete old breakpoint
-        self.clear_break(filename, lineno)
+        existing = list(self.get_breaks(filename, lineno))
+        if existing:
+            # Update existing breakpoint instead of deleting and recreating it,
+            # line is already in self.breaks and the breakpoint table.
+            bp = existing[0]
+            for duplicate in existing[1:]:
+                duplicate.deleteMe()
+            bp.temporary = temporary
+            bp.cond = cond
+            bp.enabled = True
+        else:
+            # Set breakpoint with parsed information
+            if bdb.Bdb.set_break(self, filename, lineno, temporary, cond, funcname):
+                # Line does not exist
+                return
+            bp = self.get_breaks(filename, lineno)[-1]
+            self._invalidate_trace_cache()
+            if self._breakpoint_table is not None:
+                self._breakpoint_table.add(self.canonic(filename), lineno)
         
-        # Set breakpoint with parsed information
-        bdb.Bdb.set_break(self, filename, lineno, temporary, cond, funcname)
+        # bdb.Breakpoints do not have hitcount parameter in constructor so set it here.
+        # Breakpoint should suspend on n-th hit so ignore all hits before.
+        # Counting only restarts if the hit count of this breakpoint changed,
+        # other changes keep the hits counted so far.
+        if getattr(bp, 'hitcount', None) != hitcount:
+            bp.hitcount = hitcount
+            bp.hits = 0
+            bp.ignore = max(hitcount - 1, 0)
+        bp.log_message = log_message
+
+    def _compile_condition(self, cond):
+        '''
+        Compiles breakpoint condition or log message to code object usable by eval.
         
-        # bdb.Breakpoints do not have hitcount parameter in constructor so set it here
-        if hitcount:
-            self.get_break(filename, lineno).ignore = hitcount
+        Compiled conditions are cached by their source string so changed
+        breakpoints automatically get a new code object.
+        
+        :param str cond: condition string from BreakpointInfo (may be None).
+        :returns: compiled code object, None if no condition given or the 
+                  condition string itself if it could not be compiled
+                  (bdb will then stop as for any other failing condition).
+        '''
+        if not cond:
+            return None
+        compiled = self._condition_cache.get(cond)
+        if compiled is None:
+            try:
+                compiled = compile(cond, '<breakpoint condition>', 'eval')
+            except SyntaxError:
+                compiled = cond
+            self._condition_cache[cond] = compiled
+        return compiled
  
     def update_break(self, breakpoint):
         '''
@@ -136,24 +501,248 @@ class Edb(bdb.Bdb):
         '''
         self.set_break(breakpoint)
 
+    def clear_break(self, filename, lineno):
+        '''
+        Overrides bdb.Bdb.clear_break to invalidate trace cache.
+        '''
+        self._invalidate_trace_cache()
+        result = bdb.Bdb.clear_break(self, filename, lineno)
+        if self._breakpoint_table is not None:
+            self._breakpoint_table.remove(self.canonic(filename), lineno)
+        return result
+
+    def clear_all_file_breaks(self, filename):
+        '''
+        Overrides bdb.Bdb.clear_all_file_breaks to invalidate trace cache.
+        '''
+        self._invalidate_trace_cache()
+        result = bdb.Bdb.clear_all_file_breaks(self, filename)
+        if self._breakpoint_table is not None:
+            self._breakpoint_table.clearFile(self.canonic(filename))
+        return result
+
+    def clear_all_breaks(self):
+        '''
+        Overrides bdb.Bdb.clear_all_breaks to invalidate trace cache.
+        '''
+        self._invalidate_trace_cache()
+        result = bdb.Bdb.clear_all_breaks(self)
+        self._publish_breaks()
+        return result
+
+    def set_step(self):
+        '''
+        Overrides bdb.Bdb.set_step to keep track of step state.
+        '''
+        self._set_stepping(True)
+        bdb.Bdb.set_step(self)
+        self._set_step_frame(None)
+
+    def set_next(self, frame):
+        '''
+        Overrides bdb.Bdb.set_next to keep track of step state.
+        '''
+        self._set_stepping(True)
+        bdb.Bdb.set_next(self, frame)
+        self._set_step_frame(frame)
+
+    def set_until(self, frame):
+        '''
+        Overrides bdb.Bdb.set_until to keep track of step state.
+        
+        Frames called by frame cannot end the step, they are only
+        checked for breakpoints.
+        '''
+        self._set_stepping(True)
+        bdb.Bdb.set_until(self, frame)
+        self._set_step_frame(frame)
+
+    def set_return(self, frame):
+        '''
+        Overrides bdb.Bdb.set_return to keep track of step state.
+        
+        The step ends in the caller, frame and its callees are only
+        checked for breakpoints.
+        '''
+        self._set_stepping(True)
+        bdb.Bdb.set_return(self, frame)
+        self._set_step_frame(frame.f_back)
+
+    def set_continue(self):
+        '''
+        Overrides bdb.Bdb.set_continue to keep track of step state.
+        '''
+        self._set_stepping(False)
+        bdb.Bdb.set_continue(self)
+        self._set_step_frame(None)
+
+    def set_quit(self):
+        '''
+        Overrides bdb.Bdb.set_quit to keep track of step state.
+        
+        Quitting needs every frame to be traced to raise BdbQuit.
+        '''
+        self._set_stepping(True)
+        bdb.Bdb.set_quit(self)
+        self._set_step_frame(None)
+
+    def _set_stepping(self, stepping):
+        '''
+        Helper method to store step state and invalidate trace cache on change.
+        
+        :param bool stepping: True if a step command is active.
+        '''
+        if stepping != self._stepping:
+            self._stepping = stepping
+            self._invalidate_trace_cache()
+            self._update_tracer(self._context())
+
+    def _set_step_frame(self, frame):
+        '''
+        Mirrors frame of step over/out command to JythonTraceFunction of calling thread.
+        
+        Frames below it are handled in Java like while continuing, since
+        bdb only stops there at breakpoints. Python tracing resumes once
+        control returns to frame.
+        
+        :param frame: bdb.Bdb stopframe of step command, None if every frame may stop.
+        '''
+        context = self._context()
+        if context.tracer is not None:
+            context.tracer.setStepFrame(frame)
+
+    def _invalidate_trace_cache(self):
+        '''
+        Clears cache of code objects that can never stop.
+        
+        Needs to be called whenever breakpoints or step state change.
+        '''
+        self._trace_cache = {}
+
+    def _code_can_stop(self, code):
+        '''
+        Checks if the given code object could stop while continuing.
+        
+        This is the case if its file has a breakpoint at or after the first
+        line of the code object. Conservative since nested functions share the
+        line range but is only computed once per code object.
+        
+        :param code: code object to be checked.
+        :returns: True if frames of this code object need a local trace function.
+        '''
+        if self._breakpoint_table is not None:
+            return self._breakpoint_table.canStop(self.canonic(code.co_filename), code.co_firstlineno)
+        lines = self.breaks.get(self.canonic(code.co_filename))
+        if not lines:
+            return False
+        first_line = code.co_firstlineno
+        for line in lines:
+            if line >= first_line:
+                return True
+        return False
+
     def dispatch_call(self, frame,arg):
         '''
         Method called before each function call in debugged program.
         
-        Only checks if new file is being used and updates breakpoints accordingly.
+        Checks if new file is being used and updates breakpoints accordingly.
+        
+        While continuing, frames of code objects that can never stop 
+        get no local trace function at all so they run at full speed.
         '''
+        context = self._context()
+        
+        # First call in a new worker thread, bdb.Bdb sets botframe here.
+        # Workers start in continue mode (set_continue would disable tracing).
+        if context.botframe is None and not context.first:
+            result = bdb.Bdb.dispatch_call(self, frame, arg)
+            context.stopframe = context.botframe
+            context.returnframe = None
+            context.stoplineno = -1
+            context.stepping = False
+            self._update_tracer(context)
+            return result
+        
+        # Other thread suspended with SUSPEND_ALL policy, stop on next line
+        if context.suspend_requested:
+            context.suspend_requested = False
+            self.set_step()
+        
         fn = frame.f_code.co_filename
         
         # Check if file has changed
         if fn != self._current_file:
-            # In case of file change wait for JythonDebugger to set new breakpoints.
-            if self._current_file and os.path.exists(self._current_file):
-                self._debugger.checkBreakpoints(fn);
+            # In case of file change check if breakpoints changed in the meantime.
+            if self._current_file and self._classify_file(self._current_file) != FILE_BUILTIN:
+                self._sync_breakpoints()
             
             # TODO: Check if locking would interfere with performance
             self._current_file = fn
+        
+        # botframe has to be set by bdb.Bdb on first call
+        if not self._stepping and self.botframe is not None:
+            code = frame.f_code
+            can_stop = self._trace_cache.get(code)
+            if can_stop is None:
+                can_stop = self._trace_cache[code] = self._code_can_stop(code)
+            if not can_stop:
+                return None
         return bdb.Bdb.dispatch_call(self, frame, arg)
  
+    def dispatch_line(self, frame):
+        '''
+        Method called before each traced line in debugged program.
+        
+        Overrides bdb.Bdb.dispatch_line to handle suspend requests of other threads.
+        '''
+        context = self._context()
+        if context.suspend_requested:
+            context.suspend_requested = False
+            self.user_line(frame)
+            if self.quitting: raise bdb.BdbQuit
+            return self.trace_dispatch
+        return bdb.Bdb.dispatch_line(self, frame)
+
+    def break_here(self, frame):
+        '''
+        Overrides bdb.Bdb.break_here to remember if breakpoint was hit.
+        
+        Lines without breakpoint are rejected by a single lookup in the
+        breakpoint table instead of scanning the file's list of lines.
+        '''
+        table = self._breakpoint_table
+        if table is not None and not table.contains(self.canonic(frame.f_code.co_filename), frame.f_lineno):
+            return False
+        hit = bdb.Bdb.break_here(self, frame)
+        if hit:
+            bp = bdb.Breakpoint.bpbynumber[self.currentbp]
+            if getattr(bp, 'log_message', None) is not None:
+                self._log(bp, frame)
+                return False
+            self._context().hit_breakpoint = True
+        return hit
+
+    def _log(self, bp, frame):
+        '''
+        Evaluates message of logpoint in frame and appends it to logpoint buffer.
+        
+        Messages that could not be compiled are logged as they are.
+        
+        :param bdb.Breakpoint bp: logpoint that was hit.
+        :param frame: frame the logpoint was hit in.
+        '''
+        buffer = self._logpoint_buffer
+        if buffer is None:
+            return
+        message = bp.log_message
+        try:
+            if not isinstance(message, basestring):
+                message = eval(message, frame.f_globals, frame.f_locals)
+            message = unicode(message)
+        except:
+            message = u'<error evaluating log message: {}>'.format(sys.exc_info()[1])
+        buffer.append(frame.f_code.co_filename, frame.f_lineno, message)
+
     def user_line(self, frame):
         '''
         This method is called when debugger stops or breaks at line.
@@ -178,32 +767,66 @@ class Edb(bdb.Bdb):
         with self._frame_lock:
             self._current_frame = frame
 
+        context = self._context()
+        
         # Simple sulution to handle suspend on startup
-        if self._first:
-            self._first = False
+        if context.first:
+            context.first = False
             if not self._suspend_on_startup:
                 self.set_continue()
                 return
         
         # Call break function that notifies JythonDebugger and suspends execution
-        self._break()
+        self._break(context)
         
         # If we are here everything necessary was handled
-        self._continue()
+        self._continue(context)
 
-    def _break(self):
+    def _break(self, context):
         '''
         Function called when Debugger stops (breakpoint or step command).
         
         Calls JythonDebugger to send event to Eclipse and waits for user input.
+        Only the calling thread waits, other threads are only suspended if
+        SUSPEND_ALL policy is set.
+        
+        :param _ThreadContext context: context of calling thread.
         '''
+        # Debugger already finished but worker threads still running
+        if self._debugger is None:
+            return
+        
+        if context.hit_breakpoint:
+            detail = org.eclipse.debug.core.DebugEvent.BREAKPOINT
+        elif context.stepping:
+            detail = org.eclipse.debug.core.DebugEvent.STEP_END
+        else:
+            detail = org.eclipse.debug.core.DebugEvent.CLIENT_REQUEST
+        context.hit_breakpoint = False
+        
+        if self._suspend_policy == SUSPEND_ALL:
+            for other in self._contexts_for(None):
+                if other is not context and not other.suspended:
+                    other.suspend_requested = True
+                    if other.tracer is not None:
+                        other.tracer.requestSuspend()
+        
+        # Frames entered while continuing might not be traced, stepping needs them
+        if context.tracer is not None:
+            context.tracer.traceStack(context.current_frame, self.botframe)
+        
+        context.suspended = True
+        
         # Use suspend in JythonDebugger. 
         # Would also be possible to directly raise new SuspendedEvent
-        self._debugger.fireSuspendEvent(java.lang.Thread.currentThread(), self._get_stack_trace())
+        self._debugger.fireSuspendEvent(context.thread, self._get_stack_trace(), detail)
         
         # Wait for continuation from Eclipse
-        self._continue_event.wait()
-        self._continue_event.clear()
+        start = java.lang.System.nanoTime()
+        context.continue_event.wait()
+        context.continue_event.clear()
+        context.wait_time += java.lang.System.nanoTime() - start
+        context.suspended = False
 
     def _get_stack_trace(self):
         '''
@@ -219,43 +842,60 @@ class Edb(bdb.Bdb):
             filename = frame.f_code.co_filename
             
             # If file does not exist we can assume that it is a builtin and can be skipped.
-            # This also means we are already down the stack and can abort.            
-            if not os.path.exists(filename):
+            # This also means we are already down the stack and can abort.
+            # Same for bdb.Bdb.run frame calling the script.
+            if frame is self.botframe or self._classify_file(filename) == FILE_BUILTIN:
                 break
             
-            # Convert from JythonDictionary to Java.util.HashMap
-            java_locals = java.util.HashMap()
-            for key, val in frame.f_locals.items():
-                java_locals.put(key,val)
-                
-            # Append frame to stack
-            stack.append(org.eclipse.ease.lang.python.jython.debugger.JythonDebugFrame(filename, lineno, java_locals))
+            # Append frame to stack, locals are only converted once requested by Eclipse
+            stack.append(org.eclipse.ease.lang.python.jython.debugger.JythonDebugFrame(filename, lineno, frame))
             
         return stack
 
-    def _continue(self):
+    def _sync_breakpoints(self):
+        '''
+        Synchronizes breakpoints with JythonDebugger if they changed.
+        
+        Only a single version check as long as nothing changed, otherwise
+        JythonDebugger resets breakpoints for files changed since last sync.
+        Any tracing thread may sync, the lock keeps threads from clearing and
+        setting breakpoints of the same file at the same time.
+        '''
+        debugger = self._debugger
+        
+        # Debugger already finished but worker threads still running
+        if debugger is None:
+            return
+        
+        # Double checked locking, another thread might have synced meanwhile
+        if debugger.getBreakpointVersion() != self._breakpoint_version:
+            with self._breakpoint_lock:
+                if debugger.getBreakpointVersion() != self._breakpoint_version:
+                    self._breakpoint_version = debugger.syncBreakpoints(self._breakpoint_version)
+
+    def _continue(self, context):
         '''
         Function called when Debugger is about to continue (step or resume).
+        
+        :param _ThreadContext context: context of calling thread.
         '''
         # TODO: think if file should be locked
         # Probably not necessary because communication with JythonDebugger is synchronous
-        self._debugger.checkBreakpoints(self._current_file)
+        self._sync_breakpoints()
         
         # Double checked locking to assure thread safety
-        if self._step_func:
+        if context.step_func:
             with self._step_lock:
-                if self._step_func:
-                    # Since in Python everything is an object, this works
-                    self._step_func(*(self._step_param or []))
-                self._step_func = self._step_param = None
-                
-        # Reset resume event. Integers are thread-safe by default
-        self._resume_event_type = -1
+                if context.step_func:
+                    # Since in Python everything is an object, this works.
+                    # Step functions run in the stepping thread so bdb state goes to its context.
+                    context.step_func(*(context.step_param or []))
+                context.step_func = context.step_param = None
              
     def _continue_wrapper(func):
         '''
-        Decorator calls function and sets the _continue_event and 
-        assures thread-safety of member _step_func.
+        Decorator calls function for each matching suspended thread context
+        and sets its continue_event. Assures thread-safety of step_func.
          
         This can be used for all execution handling methods like:
          
@@ -263,58 +903,65 @@ class Edb(bdb.Bdb):
           * step over
           * step into
           * quit
+        
+        Decorated functions get a _ThreadContext, callers pass the Java 
+        thread to be resumed (None for all threads).
         '''
-        def wrapped(self, *args, **kwargs):
-            with self._step_lock:
-                func(self, *args, **kwargs)
-            self._continue_event.set()
+        def wrapped(self, thread=None):
+            for context in self._contexts_for(thread):
+                if not context.suspended:
+                    continue
+                with self._step_lock:
+                    func(self, context)
+                context.continue_event.set()
         return wrapped
             
     @_continue_wrapper
-    def step_continue(self):
+    def step_continue(self, context):
         '''
-        Simply stores self.set_continue method to member.
+        Simply stores self.set_continue method to context.
         Thread safety assured by _continue_wrapper.
         '''
-        self._step_func = self.set_continue
-        self._resume_event_type = 0x20
+        context.step_func = self.set_continue
      
     @_continue_wrapper
-    def step_stepover(self):
+    def step_stepover(self, context):
         '''
-        Simply stores self.set_step method to member.
+        Simply stores self.set_until method to context.
         Thread safety assured by _continue_wrapper.
         '''
-        self._step_func = self.set_until
-        self._step_param = [self._current_frame]
-        self._resume_event_type = org.eclipse.debug.core.DebugEvent.STEP_OVER
+        context.step_func = self.set_until
+        context.step_param = [context.current_frame]
  
     @_continue_wrapper
-    def step_stepinto(self):
+    def step_stepinto(self, context):
         '''
-        Simply stores self.set_next method to member.
+        Simply stores self.set_step method to context.
         Thread safety assured by _continue_wrapper.
         '''
-        self._step_func = self.set_step
-        self._resume_event_type = org.eclipse.debug.core.DebugEvent.STEP_INTO
+        context.step_func = self.set_step
  
     @_continue_wrapper
-    def step_stepout(self):
+    def step_stepout(self, context):
         '''
-        Simply stores self.set_next method to member.
+        Simply stores self.set_return method to context.
         Thread safety assured by _continue_wrapper.
         '''
-        self._step_func = self.set_return
-        self._step_param = [self._current_frame]
-        self._resume_event_type = org.eclipse.debug.core.DebugEvent.STEP_RETURN
+        context.step_func = self.set_return
+        context.step_param = [context.current_frame]
  
-    @_continue_wrapper
-    def step_quit(self):
+    def step_quit(self, thread=None):
         '''
-        Simply stores self.set_continue method to member.
-        Thread safety assured by _continue_wrapper.
+        Stops debugging in all threads.
+        
+        Sets quitting flag so every traced thread raises bdb.BdbQuit and
+        releases all suspended threads.
         '''
-        self._step_func = self.set_quit
+        self.quitting = 1
+        for context in self._contexts_for(None):
+            with self._step_lock:
+                context.step_func = self.set_quit
+            context.continue_event.set()
              
     def get_var(self, var):
         '''
@@ -388,32 +1035,89 @@ class Edb(bdb.Bdb):
         '''
         if not file_to_run:
             raise ValueError("filename for run must not be empty")
-        if not os.path.exists(file_to_run):
+        if self._classify_file(file_to_run) == FILE_BUILTIN:
             raise IOError("file {} does not exist".format(file_to_run))
         
         # HACK: Problem with recompilation of modules. Could be overkill.
         self.reload_modules()
         
-        self._first = True
-        cmd = 'execfile({})'.format(repr(file_to_run))
-        bdb.Bdb.run(self, cmd)
+        # Main thread handles suspend on startup, reset its context
+        context = self._context()
+        context.first = True
+        context.stepping = True
+        self._invalidate_trace_cache()
+        
+        # Initially get all breakpoints
+        with self._breakpoint_lock:
+            self._breakpoint_version = 0
+        self._publish_breaks()
+        self._sync_breakpoints()
+        
+        # Use cached code object if possible, execfile would recompile script every time.
+        cmd = self._debugger.getCompiledCode(file_to_run)
+        if cmd is None:
+            cmd = 'execfile({})'.format(repr(file_to_run))
+        if self._tracer is None:
+            # Worker threads started by script need tracing as well
+            threading.settrace(self.trace_dispatch)
+            try:
+                bdb.Bdb.run(self, cmd)
+            finally:
+                threading.settrace(None)
+        else:
+            self._run_traced(cmd)
         self._debugger = None
         bdb.Bdb.__init__(self, None)
 
+    def _run_traced(self, cmd):
+        '''
+        Executes cmd like bdb.Bdb.run but installs JythonTracer's trace 
+        function instead of trace_dispatch.
+        
+        :param cmd: code object or source string to be executed.
+        '''
+        import __main__
+        globals = __main__.__dict__
+        self.reset()
+        if isinstance(cmd, basestring):
+            cmd = cmd + '\n'
+        
+        context = self._context()
+        context.tracer = self._tracer.install(context.stepping)
+        # Worker threads started by script install their trace function on first call
+        threading.settrace(self._trace_worker)
+        try:
+            exec(cmd, globals, globals)
+        except bdb.BdbQuit:
+            pass
+        finally:
+            self.quitting = 1
+            threading.settrace(None)
+            self._tracer.uninstall()
+            context.tracer = None
+
+    def _trace_worker(self, frame, event, arg):
+        '''
+        Initial trace function of worker threads.
+        
+        Replaces itself by a JythonTraceFunction for all further calls, 
+        the first call is handled by trace_dispatch to set up the thread context.
+        '''
+        context = self._context()
+        context.tracer = self._tracer.install(context.stepping)
+        return self.trace_dispatch(frame, event, arg)
+
     def reload_modules(self):
         '''
         Jython / JythonScriptEngine currently has a problem with changed sources
-        so we reload all imported modules here to have modified sources.
-        '''
-        import sys, types
-        for mod_name, mod in {
-                name: mod for 
-                name, mod in 
-                sys.modules.items() 
-                if mod and isinstance(mod, types.ModuleType) and 
-                mod not in [bdb, sys, types, os, threading] and 
-                name not in ['__main__']
-                }.items():
-            globals().update({mod_name: reload(mod)})
+        so we reload imported modules here to have modified sources.
+        
+        Only modules whose source changed since the last run and the modules
+        depending on them are reloaded.
+        '''
+        tracker = module_tracker.get_tracker()
+        tracker.exclude('__main__', 'bdb', 'sys', 'types', 'os', 'threading',
+                        __name__, 'setup_debugger')
+        tracker.reload_changed()
 
 eclipse_jython_debugger = Edb()
\ No newline at end of file
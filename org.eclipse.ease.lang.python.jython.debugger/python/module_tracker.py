@@ -0,0 +1,228 @@
+'''
+Copyright (c) 2014 Martin Kloesch
+All rights reserved. This program and the accompanying materials
+are made available under the terms of the Eclipse Public License v1.0
+which accompanies this distribution, and is available at
+http://www.eclipse.org/legal/epl-v10.html
+
+Contributors:
+ * Martin Kloesch - initial API and implementation
+'''
+# Python std library imports
+import os
+import sys
+import types
+
+
+class ModuleTracker(object):
+    '''
+    Tracks source files of imported modules to only reload changed ones.
+
+    Jython / JythonScriptEngine currently has a problem with changed sources
+    so modules need to be reloaded before each debug run. Reloading all of
+    sys.modules is slow, so the tracker stores modification time and size
+    of each module's source file and only reloads modules whose source
+    changed plus the modules depending on them.
+
+    A single instance lives as long as this module stays in sys.modules,
+    so the state persists across runs sharing the same interpreter.
+    '''
+    #: Names of modules never to be reloaded.
+    _excluded = None
+
+    #: Map of module name to (source file, (mtime, size)) at last check.
+    _stamps = None
+
+    def __init__(self, excluded=()):
+        '''
+        Constructor sets up necessary members.
+
+        :param excluded: names of modules never to be reloaded.
+        '''
+        self._excluded = set(excluded)
+        self._excluded.add(__name__)
+        self._stamps = {}
+
+    def exclude(self, *names):
+        '''
+        Adds module names that should never be reloaded.
+
+        :param names: module names to be excluded.
+        '''
+        self._excluded.update(names)
+
+    def reload_changed(self):
+        '''
+        Reloads all modules whose source changed since the last call
+        and all modules depending on them.
+
+        :returns: list of reloaded module names in reload order.
+        '''
+        modules = self._tracked_modules()
+        changed = [name for name, (mod, source) in modules.items()
+                   if self._has_changed(name, source)]
+
+        if not changed:
+            return []
+
+        reloaded = []
+        for name in self._with_dependents(changed, modules):
+            source = modules[name][1]
+            try:
+                reload(modules[name][0])
+            except Exception:
+                # Module is broken now, next import in script will show the error.
+                # Forget its stamp so it is retried next time.
+                self._stamps[name] = (source, None)
+                continue
+            reloaded.append(name)
+
+        # Update stamps so reloaded modules are not reloaded again next time
+        for name in reloaded:
+            source = modules[name][1]
+            self._stamps[name] = (source, self._stamp(source))
+        return reloaded
+
+    def _tracked_modules(self):
+        '''
+        Helper method returning all modules that could be reloaded.
+
+        :returns: map of module name to (module, source file).
+        '''
+        modules = {}
+        for name, mod in sys.modules.items():
+            if not mod or not isinstance(mod, types.ModuleType):
+                continue
+            if name in self._excluded:
+                continue
+            source = self._source_file(mod)
+            if source:
+                modules[name] = (mod, source)
+        return modules
+
+    def _source_file(self, module):
+        '''
+        Helper method to get source file of module.
+
+        :param module: module object to be checked.
+        :returns: path of .py source file or None if not loaded from source.
+        '''
+        filename = getattr(module, '__file__', None)
+        if not filename:
+            return None
+        if filename.endswith('$py.class'):
+            filename = filename[:-len('$py.class')] + '.py'
+        elif filename.endswith('.pyc') or filename.endswith('.pyo'):
+            filename = filename[:-1]
+        if not filename.endswith('.py'):
+            return None
+        return filename
+
+    def _stamp(self, filename):
+        '''
+        Helper method to get modification stamp of file.
+
+        :param filename: file to be checked.
+        :returns: tuple (mtime, size) or None if file does not exist.
+        '''
+        try:
+            st = os.stat(filename)
+        except OSError:
+            return None
+        return (st.st_mtime, st.st_size)
+
+    def _has_changed(self, name, source):
+        '''
+        Checks if source of module changed since last check.
+
+        For modules seen the first time the compiled class file is used as
+        reference: if it is older than the source, the module is outdated.
+
+        The new stamp is only stored for unchanged modules, changed ones are
+        stamped by reload_changed after they were reloaded successfully.
+
+        :param name: module name.
+        :param source: source file of module.
+        :returns: True if module needs to be reloaded.
+        '''
+        stamp = self._stamp(source)
+        old = self._stamps.get(name)
+
+        changed = False
+        if stamp is None:
+            changed = False
+        elif old is not None:
+            changed = old != (source, stamp)
+        else:
+            for compiled in (source[:-len('.py')] + '$py.class', source + 'c'):
+                compiled_stamp = self._stamp(compiled)
+                if compiled_stamp is not None:
+                    changed = compiled_stamp[0] < stamp[0]
+                    break
+
+        if not changed:
+            self._stamps[name] = (source, stamp)
+        return changed
+
+    def _with_dependents(self, changed, modules):
+        '''
+        Helper method calculating modules to be reloaded.
+
+        A module depends on another one if it holds a reference to it or
+        to an object defined in it (e.g. from x import y). Every module is
+        reloaded after all of its affected dependencies, so it binds to
+        their new objects. Modules depending on each other in a cycle are
+        reloaded in the order they were found.
+
+        :param changed: names of modules whose source changed.
+        :param modules: map of module name to (module, source file).
+        :returns: list of module names in reload order.
+        '''
+        dependencies = {}
+        dependents = {}
+        for name, (mod, source) in modules.items():
+            for value in mod.__dict__.values():
+                if isinstance(value, types.ModuleType):
+                    dependency = getattr(value, '__name__', None)
+                else:
+                    dependency = getattr(value, '__module__', None)
+                if dependency and dependency != name and dependency in modules:
+                    dependencies.setdefault(name, set()).add(dependency)
+                    dependents.setdefault(dependency, set()).add(name)
+
+        # Find affected modules, changed modules first, then dependents
+        affected = list(changed)
+        order = dict((name, index) for index, name in enumerate(affected))
+        index = 0
+        while index < len(affected):
+            for dependent in sorted(dependents.get(affected[index], ())):
+                if dependent not in order:
+                    order[dependent] = len(affected)
+                    affected.append(dependent)
+            index += 1
+
+        # Topological sort of affected subgraph
+        pending = dict((name, dependencies.get(name, set()) & set(affected)) for name in affected)
+        ordered = []
+        while pending:
+            ready = [name for name, waiting in pending.items() if not waiting]
+            # In a cycle no module is ready, continue with the first one found
+            name = min(ready or pending.keys(), key=order.get)
+            del pending[name]
+            for waiting in pending.values():
+                waiting.discard(name)
+            ordered.append(name)
+        return ordered
+
+
+#: Tracker shared by all debugger instances using the same sys.modules.
+_tracker = None
+
+def get_tracker():
+    '''
+    Getter method for shared ModuleTracker instance.
+    '''
+    global _tracker
+    if _tracker is None:
+        _tracker = ModuleTracker()
+    return _tracker
\ No newline at end of file
@@ -11,6 +11,8 @@
  *******************************************************************************/
 package org.eclipse.ease.lang.python.jython.debugger;
 
+import org.osgi.framework.BundleContext;
+
 /**
  * The activator class controls the plug-in life cycle.
  * Only overrides org.eclipse.ease.lang.python.jython.Activator.PLUGIN_ID
@@ -19,4 +21,11 @@ public class Activator extends org.eclipse.ease.lang.python.jython.Activator {
 
 	// The plug-in ID
 	public static final String PLUGIN_ID = "org.eclipse.ease.lang.python.jython.debugger"; //$NON-NLS-1$
+
+	@Override
+	public void stop(final BundleContext context) throws Exception {
+		JythonDebuggerMetrics.unregister();
+		CompiledCodeCache.clear();
+		super.stop(context);
+	}
 }
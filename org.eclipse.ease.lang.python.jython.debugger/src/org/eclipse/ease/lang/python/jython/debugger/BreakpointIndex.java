@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.debug.core.model.IBreakpoint;
+import org.eclipse.ease.lang.python.jython.debugger.model.JythonDebugModelPresentation;
+
+/**
+ * Index of all enabled Jython breakpoints keyed by absolute filename.
+ *
+ * The index is kept up to date by the breakpoint listener methods of
+ * JythonDebugTarget so JythonDebugger does not have to walk the whole
+ * BreakpointManager every time edb.py switches to a new file.
+ *
+ * Every change increments a version number so edb.py can cheaply check
+ * if it needs to resync and only fetch the files that changed since.
+ *
+ * Thread-safe, since it is updated from the UI thread and read from
+ * the Jython thread.
+ *
+ * @author kloeschmartin
+ */
+public class BreakpointIndex {
+	/**
+	 * BreakpointInfo objects grouped by absolute filename.
+	 */
+	private final Map<String, Map<IBreakpoint, BreakpointInfo>> mFileBreakpoints = new HashMap<String, Map<IBreakpoint, BreakpointInfo>>();
+
+	/**
+	 * Reverse lookup to find the file a breakpoint was indexed for.
+	 * Necessary because the marker might already be gone on removal.
+	 */
+	private final Map<IBreakpoint, String> mBreakpointFiles = new HashMap<IBreakpoint, String>();
+
+	/**
+	 * Version of the breakpoint set at which each file last changed.
+	 * Entries stay after all breakpoints of a file are removed to propagate the removal.
+	 */
+	private final Map<String, Long> mFileVersions = new HashMap<String, Long>();
+
+	/**
+	 * Version of the breakpoint set, incremented on every change.
+	 * Volatile so it can be read without locking.
+	 */
+	private volatile long mVersion = 0;
+
+	/**
+	 * Constructor fills index with the given breakpoints.
+	 *
+	 * @param breakpoints: initial breakpoints to be indexed.
+	 */
+	public BreakpointIndex(final IBreakpoint[] breakpoints) {
+		for (IBreakpoint breakpoint : breakpoints) {
+			addBreakpoint(breakpoint);
+		}
+	}
+
+	/**
+	 * Adds the given breakpoint to the index.
+	 *
+	 * Disabled breakpoints and breakpoints of other debug models are ignored.
+	 *
+	 * @param breakpoint: breakpoint to be indexed.
+	 */
+	public synchronized void addBreakpoint(final IBreakpoint breakpoint) {
+		// Just to be sure remove old entry
+		removeBreakpoint(breakpoint);
+
+		if (!JythonDebugModelPresentation.ID.equals(breakpoint.getModelIdentifier())) {
+			return;
+		}
+
+		// simple check to see if Breakpoint is enabled. Try - catch necessary
+		try {
+			if (!breakpoint.isEnabled()) {
+				return;
+			}
+		} catch (CoreException e) {
+			return;
+		}
+
+		// Marker might already be deleted
+		if (breakpoint.getMarker() == null || !breakpoint.getMarker().exists()) {
+			return;
+		}
+
+		BreakpointInfo info = new BreakpointInfo(breakpoint);
+		Map<IBreakpoint, BreakpointInfo> fileBreakpoints = mFileBreakpoints.get(info.getFilename());
+		if (fileBreakpoints == null) {
+			fileBreakpoints = new LinkedHashMap<IBreakpoint, BreakpointInfo>();
+			mFileBreakpoints.put(info.getFilename(), fileBreakpoints);
+		}
+		fileBreakpoints.put(breakpoint, info);
+		mBreakpointFiles.put(breakpoint, info.getFilename());
+		markChanged(info.getFilename());
+	}
+
+	/**
+	 * Removes the given breakpoint from the index.
+	 *
+	 * @param breakpoint: breakpoint to be removed.
+	 */
+	public synchronized void removeBreakpoint(final IBreakpoint breakpoint) {
+		String filename = mBreakpointFiles.remove(breakpoint);
+		if (filename == null) {
+			return;
+		}
+
+		Map<IBreakpoint, BreakpointInfo> fileBreakpoints = mFileBreakpoints.get(filename);
+		if (fileBreakpoints != null) {
+			fileBreakpoints.remove(breakpoint);
+			if (fileBreakpoints.isEmpty()) {
+				mFileBreakpoints.remove(filename);
+			}
+		}
+		markChanged(filename);
+	}
+
+	/**
+	 * Re-parses the given breakpoint (e.g. after it was enabled, disabled or moved).
+	 *
+	 * @param breakpoint: breakpoint that changed.
+	 */
+	public void updateBreakpoint(final IBreakpoint breakpoint) {
+		addBreakpoint(breakpoint);
+	}
+
+	/**
+	 * Helper method to increment version and store it for changed file.
+	 * Must only be called while holding the lock.
+	 *
+	 * @param filename: absolute filename of file whose breakpoints changed.
+	 */
+	private void markChanged(final String filename) {
+		mVersion++;
+		mFileVersions.put(filename, mVersion);
+	}
+
+	/**
+	 * Getter method for current version of the breakpoint set.
+	 *
+	 * @return version number incremented on every change.
+	 */
+	public long getVersion() {
+		return mVersion;
+	}
+
+	/**
+	 * Getter method for all files whose breakpoints changed after given version.
+	 *
+	 * @param sinceVersion: last version known by caller (0 to get all files).
+	 * @return list of absolute filenames that need to be resynced.
+	 */
+	public synchronized List<String> getChangedFiles(final long sinceVersion) {
+		List<String> changedFiles = new ArrayList<String>();
+		for (Map.Entry<String, Long> entry : mFileVersions.entrySet()) {
+			if (entry.getValue() > sinceVersion) {
+				changedFiles.add(entry.getKey());
+			}
+		}
+		return changedFiles;
+	}
+
+	/**
+	 * Getter method for all enabled breakpoints in given file.
+	 *
+	 * @param filename: absolute filename to get breakpoints for.
+	 * @return copy of all BreakpointInfo objects for the file (may be empty).
+	 */
+	public synchronized List<BreakpointInfo> getBreakpoints(final String filename) {
+		Map<IBreakpoint, BreakpointInfo> fileBreakpoints = mFileBreakpoints.get(filename);
+		if (fileBreakpoints == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<BreakpointInfo>(fileBreakpoints.values());
+	}
+}
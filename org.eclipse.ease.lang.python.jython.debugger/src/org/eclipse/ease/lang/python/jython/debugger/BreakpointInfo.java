@@ -26,6 +26,20 @@ import org.python.pydev.debug.model.PyBreakpoint;
  * @author kloeschmartin
  */
 public class BreakpointInfo {
+	/**
+	 * Marker attribute storing the hit count of a breakpoint.
+	 * Breakpoint only suspends starting with the n-th hit.
+	 * PyBreakpoint has no such property, set by SetHitCountAction.
+	 */
+	public static final String HIT_COUNT = "org.eclipse.ease.lang.python.jython.debugger.hitCount";
+
+	/**
+	 * Marker attribute storing the message expression of a logpoint.
+	 * Logpoints log the evaluated message instead of suspending.
+	 * PyBreakpoint has no such property, set by SetLogMessageAction.
+	 */
+	public static final String LOG_MESSAGE = "org.eclipse.ease.lang.python.jython.debugger.logMessage";
+
 	/**
 	 * All necessary info for breakpoints (from Jython Edb point of view)
 	 */
@@ -34,6 +48,7 @@ public class BreakpointInfo {
 	private String mCondition = null;
 	private int mHitcount = 0;
 	private boolean mTemporary = false;
+	private String mLogMessage = null;
 
 	/**
 	 * Parses breakpoint info from IBreakpoint to members
@@ -54,12 +69,24 @@ public class BreakpointInfo {
 			}
 		}
 		
-		// Get condition from PyBreakpoint
+		// Get condition and hit count from PyBreakpoint
 		if (breakpoint instanceof PyBreakpoint) {
 			try {
 				mCondition = ((PyBreakpoint) breakpoint).getCondition();
 			} catch (DebugException e) {
 			}
+			mHitcount = breakpoint.getMarker().getAttribute(HIT_COUNT, 0);
+			mLogMessage = breakpoint.getMarker().getAttribute(LOG_MESSAGE, null);
+		}
+
+		// Empty conditions would always evaluate to False
+		if (mCondition != null && mCondition.trim().isEmpty()) {
+			mCondition = null;
+		}
+
+		// Empty log message means a normal breakpoint
+		if (mLogMessage != null && mLogMessage.trim().isEmpty()) {
+			mLogMessage = null;
 		}
 	}
 
@@ -85,4 +112,8 @@ public class BreakpointInfo {
 	public boolean getTemporary() {
 		return mTemporary;
 	}
+
+	public String getLogMessage() {
+		return mLogMessage;
+	}
 }
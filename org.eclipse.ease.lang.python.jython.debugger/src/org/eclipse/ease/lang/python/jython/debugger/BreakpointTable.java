@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup table of breakpoint lines shared between JythonDebugger and Edb.
+ *
+ * Maps interned canonical filenames (as used by bdb.Bdb.breaks) to a line
+ * bitset, so checking a line is a single array access. Bitsets are never
+ * modified once published: every change replaces the file's array
+ * (copy-on-write), so tracing threads read without locking while breakpoints
+ * are edited. Writers are serialized by this.
+ *
+ * @author kloeschmartin
+ */
+public class BreakpointTable {
+	private static final long[] EMPTY = new long[0];
+
+	private final Map<String, long[]> mLines = new ConcurrentHashMap<String, long[]>();
+
+	/**
+	 * Incremented after every change, readers caching bitsets have to refresh when it changes.
+	 */
+	private volatile int mGeneration = 0;
+
+	/**
+	 * Function called by Jython Edb object when a breakpoint was set.
+	 *
+	 * @param filename: canonical filename.
+	 * @param line: line number of breakpoint.
+	 */
+	public synchronized void add(final String filename, final int line) {
+		if (line < 0)
+			return;
+
+		long[] old = mLines.get(filename);
+		if (old == null)
+			old = EMPTY;
+		int word = line >>> 6;
+		long[] bits = Arrays.copyOf(old, Math.max(old.length, word + 1));
+		bits[word] |= 1L << line;
+		publish(filename, bits);
+	}
+
+	/**
+	 * Function called by Jython Edb object when a breakpoint was removed.
+	 *
+	 * @param filename: canonical filename.
+	 * @param line: line number of breakpoint.
+	 */
+	public synchronized void remove(final String filename, final int line) {
+		long[] old = mLines.get(filename);
+		if (!contains(old, line))
+			return;
+
+		long[] bits = old.clone();
+		bits[line >>> 6] &= ~(1L << line);
+		publish(filename, bits);
+	}
+
+	/**
+	 * Function called by Jython Edb object when all breakpoints of a file were removed.
+	 *
+	 * @param filename: canonical filename.
+	 */
+	public synchronized void clearFile(final String filename) {
+		if (mLines.remove(filename) != null)
+			mGeneration++;
+	}
+
+	/**
+	 * Function called by Jython Edb object when all breakpoints were removed.
+	 */
+	public synchronized void clear() {
+		mLines.clear();
+		mGeneration++;
+	}
+
+	/**
+	 * Getter method for current generation.
+	 *
+	 * @return number incremented on every change.
+	 */
+	public int getGeneration() {
+		return mGeneration;
+	}
+
+	/**
+	 * Getter method for line bitset of file.
+	 *
+	 * The returned array must not be modified.
+	 *
+	 * @param filename: canonical filename.
+	 * @return line bitset or null if file has no breakpoints.
+	 */
+	public long[] getLines(final String filename) {
+		return mLines.get(filename);
+	}
+
+	/**
+	 * Checks if file has breakpoint on line.
+	 *
+	 * @param filename: canonical filename.
+	 * @param line: line number.
+	 * @return true if a breakpoint is set on line.
+	 */
+	public boolean contains(final String filename, final int line) {
+		return contains(mLines.get(filename), line);
+	}
+
+	/**
+	 * Checks if file has breakpoint at or after given line.
+	 *
+	 * Used to check if a code object starting at that line could ever stop.
+	 *
+	 * @param filename: canonical filename.
+	 * @param firstLine: first line of code object.
+	 * @return true if there is a breakpoint at or after firstLine.
+	 */
+	public boolean canStop(final String filename, final int firstLine) {
+		return getLastLine(mLines.get(filename)) >= firstLine;
+	}
+
+	/**
+	 * Checks bitset for line.
+	 *
+	 * @param bits: line bitset (may be null).
+	 * @param line: line number.
+	 * @return true if bit for line is set.
+	 */
+	public static boolean contains(final long[] bits, final int line) {
+		if ((bits == null) || (line < 0))
+			return false;
+		int word = line >>> 6;
+		return (word < bits.length) && ((bits[word] & (1L << line)) != 0);
+	}
+
+	/**
+	 * Getter method for highest line in bitset.
+	 *
+	 * @param bits: line bitset (may be null).
+	 * @return highest line with breakpoint or -1 if bitset is empty.
+	 */
+	public static int getLastLine(final long[] bits) {
+		if ((bits == null) || (bits.length == 0))
+			return -1;
+		int word = bits.length - 1;
+		return (word * 64) + 63 - Long.numberOfLeadingZeros(bits[word]);
+	}
+
+	/**
+	 * Helper method storing new bitset, trailing empty words are removed so
+	 * the last word always contains the highest line.
+	 */
+	private void publish(final String filename, final long[] bits) {
+		int length = bits.length;
+		while ((length > 0) && (bits[length - 1] == 0))
+			length--;
+
+		if (length == 0)
+			mLines.remove(filename);
+		else
+			mLines.put(filename.intern(), (length == bits.length) ? bits : Arrays.copyOf(bits, length));
+		mGeneration++;
+	}
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.Platform;
+import org.python.core.BytecodeLoader;
+import org.python.core.PyCode;
+import org.python.core.imp;
+
+/**
+ * Cache of compiled Jython code objects for scripts run by the debugger.
+ *
+ * Entries are keyed by canonical path and only valid as long as modification
+ * time and size of the file did not change. The code objects of the most
+ * recently used files are kept in memory until the plugin stops. Optionally
+ * the compiled classes are also stored in the plugin state location, enable
+ * by setting system property {@value #DISK_CACHE_PROPERTY} to true.
+ *
+ * Disk cache files are named by a digest of the canonical path and start
+ * with the path itself, which is checked on load.
+ *
+ * @author kloeschmartin
+ */
+public class CompiledCodeCache {
+	/**
+	 * System property to enable storing compiled classes on disk.
+	 */
+	public static final String DISK_CACHE_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.diskCodeCache";
+
+	/**
+	 * Module name used for compiled scripts (scripts are run as __main__).
+	 */
+	private static final String MODULE_NAME = "__main__";
+
+	/**
+	 * Suffix Jython uses for compiled classes.
+	 */
+	private static final String CLASS_SUFFIX = "$py.class";
+
+	/**
+	 * Maximum number of code objects kept in memory.
+	 */
+	private static final int MAX_ENTRIES = 256;
+
+	/**
+	 * In-memory cache keyed by canonical path, least recently used entries are removed first.
+	 */
+	private static final Map<String, Entry> ENTRIES = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	});
+
+	/**
+	 * Cached code object with stamp of file it was compiled from.
+	 */
+	private static class Entry {
+		private final String mFilename;
+		private final long mLastModified;
+		private final long mLength;
+		private final PyCode mCode;
+
+		public Entry(final String filename, final long lastModified, final long length, final PyCode code) {
+			mFilename = filename;
+			mLastModified = lastModified;
+			mLength = length;
+			mCode = code;
+		}
+
+		public boolean matches(final String filename, final long lastModified, final long length) {
+			return mFilename.equals(filename) && (mLastModified == lastModified) && (mLength == length);
+		}
+	}
+
+	private CompiledCodeCache() {
+	}
+
+	/**
+	 * Getter method for compiled code of given file.
+	 *
+	 * Compiles the file only if it is not cached or changed since.
+	 *
+	 * @param filename: absolute filename, used as co_filename of compiled code.
+	 * @return compiled code object.
+	 * @throws IOException if file cannot be read.
+	 */
+	public static PyCode getCode(final String filename) throws IOException {
+		File file = new File(filename);
+		String key = file.getCanonicalPath();
+
+		// Read stamp before compiling, changes while compiling will cause recompilation next time
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		Entry entry = ENTRIES.get(key);
+		if (entry != null && entry.matches(filename, lastModified, length)) {
+			return entry.mCode;
+		}
+
+		File diskCache = getDiskCacheFile(key, lastModified, length);
+		byte[] bytes = null;
+		if (diskCache != null && diskCache.isFile()) {
+			bytes = readDiskCache(diskCache, key);
+		}
+		if (bytes == null) {
+			bytes = compile(file, filename, lastModified);
+			if (diskCache != null) {
+				writeDiskCache(diskCache, key, bytes);
+			}
+		}
+		PyCode code = BytecodeLoader.makeCode(MODULE_NAME + "$py", bytes, filename);
+
+		ENTRIES.put(key, new Entry(filename, lastModified, length, code));
+		return code;
+	}
+
+	/**
+	 * Removes all in-memory entries.
+	 */
+	public static void clear() {
+		ENTRIES.clear();
+	}
+
+	/**
+	 * Helper method compiling source file to Java bytecode.
+	 */
+	private static byte[] compile(final File file, final String filename, final long lastModified) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			return imp.compileSource(MODULE_NAME, input, filename, lastModified);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Helper method to get file in plugin state location for compiled class.
+	 *
+	 * @return file for compiled class or null if disk cache is disabled.
+	 */
+	private static File getDiskCacheFile(final String key, final long lastModified, final long length) {
+		if (!Boolean.getBoolean(DISK_CACHE_PROPERTY)) {
+			return null;
+		}
+
+		File directory = new File(Platform.getStateLocation(Platform.getBundle(Activator.PLUGIN_ID)).toFile(), "codecache");
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			return null;
+		}
+		return new File(directory, getDiskCachePrefix(key) + lastModified + "_" + length + CLASS_SUFFIX);
+	}
+
+	/**
+	 * Helper method to get filename prefix of all compiled classes for a file.
+	 *
+	 * @return hex encoded SHA-1 digest of canonical path followed by '_'.
+	 */
+	private static String getDiskCachePrefix(final String key) {
+		try {
+			StringBuilder prefix = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"))) {
+				prefix.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return prefix.append('_').toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-1
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			// every Java platform has to support UTF-8
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Helper method storing compiled class on disk. Outdated classes of the same file are deleted.
+	 *
+	 * Failures are ignored since the in-memory cache still works.
+	 */
+	private static void writeDiskCache(final File cacheFile, final String key, final byte[] bytes) {
+		String prefix = cacheFile.getName().substring(0, cacheFile.getName().indexOf('_') + 1);
+		File[] outdated = cacheFile.getParentFile().listFiles();
+		if (outdated != null) {
+			for (File old : outdated) {
+				if (old.getName().startsWith(prefix)) {
+					old.delete();
+				}
+			}
+		}
+
+		try {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)));
+			try {
+				output.writeUTF(key);
+				output.writeInt(bytes.length);
+				output.write(bytes);
+			} finally {
+				output.close();
+			}
+		} catch (IOException e) {
+			cacheFile.delete();
+		}
+	}
+
+	/**
+	 * Helper method reading compiled class stored by writeDiskCache.
+	 *
+	 * @return compiled class or null if file belongs to another source file or cannot be read.
+	 */
+	private static byte[] readDiskCache(final File cacheFile, final String key) {
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+			try {
+				if (!key.equals(input.readUTF())) {
+					return null;
+				}
+				int length = input.readInt();
+				if (length < 0 || length > cacheFile.length()) {
+					return null;
+				}
+				byte[] bytes = new byte[length];
+				input.readFully(bytes);
+				return bytes;
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			// outdated format or truncated file, compile again
+			return null;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.python.core.Py;
+import org.python.core.PyString;
+import org.python.core.PySystemState;
+import org.python.core.imp;
+import org.python.util.InteractiveInterpreter;
+
+/**
+ * Optional background compilation of the debugger's Python modules.
+ *
+ * A background job imports the debugger once in a throwaway interpreter,
+ * which loads Jython's compiler and the classes of bdb, threading, ... and
+ * compiles the debugger's own modules with CompiledCodeCache. The throwaway
+ * interpreter is disposed afterwards.
+ *
+ * This only saves compiling edb and module_tracker. The engine itself is
+ * still set up by JythonScriptEngine and setup_debugger.py is still run on
+ * every launch, interpreters are not pooled.
+ *
+ * Modules are never shared between interpreters, they keep a reference to the
+ * sys module of the interpreter that imported them. Instead the compiled code
+ * is executed in the engine's own system state when a debug session starts,
+ * so setup_debugger.py finds the modules imported without compiling them.
+ *
+ * Precompiling is disabled by default, set system property
+ * {@value #PRECOMPILE_PROPERTY} to true to enable it.
+ *
+ * @author kloeschmartin
+ */
+public class DebuggerModulePrecompiler {
+	/**
+	 * System property enabling precompiling.
+	 */
+	public static final String PRECOMPILE_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.precompileModules";
+
+	/**
+	 * Python statement to bootstrap debugger.
+	 */
+	private static final String PyBootstrapCmd = "import edb";
+
+	/**
+	 * Debugger modules in plugin's python directory, dependencies first.
+	 */
+	private static final String[] PyDebuggerModules = { "module_tracker", "edb" };
+
+	private static final String PySuffix = ".py";
+
+	private static DebuggerModulePrecompiler mInstance = null;
+
+	private final String mPyDir;
+	private final boolean mEnabled;
+
+	/**
+	 * Set once the background job compiled all debugger modules.
+	 */
+	private volatile boolean mReady = false;
+
+	/**
+	 * Getter method for shared precompiler.
+	 *
+	 * @param pyDir: absolute path to plugin's python directory.
+	 * @return shared precompiler instance.
+	 */
+	public static synchronized DebuggerModulePrecompiler getDefault(final String pyDir) {
+		if (mInstance == null) {
+			mInstance = new DebuggerModulePrecompiler(pyDir, Boolean.getBoolean(PRECOMPILE_PROPERTY));
+			mInstance.precompile();
+		}
+		return mInstance;
+	}
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param pyDir: absolute path to plugin's python directory.
+	 * @param enabled: true if debugger modules should be precompiled.
+	 */
+	public DebuggerModulePrecompiler(final String pyDir, final boolean enabled) {
+		mPyDir = pyDir;
+		mEnabled = enabled;
+	}
+
+	/**
+	 * Checks if precompiled debugger modules can be imported.
+	 *
+	 * Does not block, if precompiling did not finish yet setup_debugger.py
+	 * simply imports the modules itself.
+	 *
+	 * @return true if {@link #importModules(PySystemState)} will not compile.
+	 */
+	public boolean isReady() {
+		return mReady;
+	}
+
+	/**
+	 * Imports the pre-compiled debugger modules into the given system state.
+	 *
+	 * Modules already imported in target are kept. Modules are created by
+	 * executing their code with target as current system state, so all their
+	 * imports are resolved by target.
+	 *
+	 * @param target: system state of engine's interpreter.
+	 */
+	public void importModules(final PySystemState target) {
+		PySystemState previous = Py.setSystemState(target);
+		try {
+			for (String name : PyDebuggerModules) {
+				if (target.modules.__finditem__(name) != null) {
+					continue;
+				}
+				String filename = getModuleFile(name);
+				try {
+					imp.createFromCode(name, CompiledCodeCache.getCode(filename), filename);
+				} catch (IOException e) {
+					// setup_debugger.py will import it regularly and report the error
+					return;
+				}
+			}
+		} finally {
+			Py.setSystemState(previous);
+		}
+	}
+
+	/**
+	 * Schedules background compilation, called once by getDefault.
+	 */
+	private void precompile() {
+		if (!mEnabled) {
+			return;
+		}
+
+		Job job = new Job("Precompile Jython debugger modules") {
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				PySystemState state = new PySystemState();
+				try {
+					state.path.insert(0, new PyString(mPyDir));
+					InteractiveInterpreter interpreter = new InteractiveInterpreter(null, state);
+					interpreter.exec(PyBootstrapCmd);
+
+					for (String name : PyDebuggerModules) {
+						CompiledCodeCache.getCode(getModuleFile(name));
+					}
+					mReady = true;
+				} catch (Exception e) {
+					return new Status(IStatus.WARNING, Activator.PLUGIN_ID, "Could not precompile Jython debugger modules", e);
+				} finally {
+					state.cleanup();
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	/**
+	 * Helper method getting absolute filename of a debugger module.
+	 */
+	private String getModuleFile(final String name) {
+		return new File(mPyDir, name + PySuffix).getAbsolutePath();
+	}
+}
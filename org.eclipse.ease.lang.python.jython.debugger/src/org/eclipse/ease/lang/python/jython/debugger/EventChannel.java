@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ease.debugging.EventDispatchJob;
+import org.eclipse.ease.debugging.events.IDebugEvent;
+import org.eclipse.ease.debugging.events.ResumedEvent;
+import org.eclipse.ease.debugging.events.SuspendedEvent;
+
+/**
+ * Lock-free channel forwarding events from JythonDebugger to the EventDispatchJob.
+ *
+ * Any thread may post events without locking. A single drain job forwards
+ * them in batches. When the UI falls behind a fast step sequence, a batch
+ * contains several resume/suspend pairs of the same thread. Only the last
+ * stack of each thread is forwarded, so the sequence collapses to a single
+ * UI refresh.
+ *
+ * @author kloeschmartin
+ */
+public class EventChannel {
+	/**
+	 * Event with time it was posted, used for suspend latency metrics.
+	 */
+	private static class Posted {
+		private final IDebugEvent mEvent;
+		private final long mTime;
+
+		public Posted(final IDebugEvent event) {
+			mEvent = event;
+			mTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Events posted but not forwarded yet.
+	 */
+	private final ConcurrentLinkedQueue<Posted> mQueue = new ConcurrentLinkedQueue<Posted>();
+
+	/**
+	 * Dispatcher events are forwarded to, null once channel is closed and drained.
+	 */
+	private final AtomicReference<EventDispatchJob> mDispatcher;
+
+	/**
+	 * Flag to signalize if drain job is scheduled or running.
+	 */
+	private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+
+	/**
+	 * Flag to signalize that no more events will be posted.
+	 */
+	private volatile boolean mClosed = false;
+
+	private final JythonDebuggerMetrics mMetrics = JythonDebuggerMetrics.getDefault();
+
+	/**
+	 * Job forwarding queued events to dispatcher.
+	 */
+	private final Job mDrainJob = new Job("Jython debug event channel") {
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			do {
+				mScheduled.set(false);
+				drain();
+			} while (!mQueue.isEmpty() && mScheduled.compareAndSet(false, true));
+			return Status.OK_STATUS;
+		}
+	};
+
+	/**
+	 * Constructor only stores dispatcher.
+	 *
+	 * @param dispatcher: dispatcher for communication between debugger and debug target.
+	 */
+	public EventChannel(final EventDispatchJob dispatcher) {
+		mDispatcher = new AtomicReference<EventDispatchJob>(dispatcher);
+		mDrainJob.setSystem(true);
+		mMetrics.addChannel(this);
+	}
+
+	/**
+	 * Posts event to be forwarded to dispatcher. Never blocks.
+	 *
+	 * @param event: Debug event to be raised.
+	 */
+	public void post(final IDebugEvent event) {
+		if (mDispatcher.get() == null)
+			return;
+
+		mQueue.offer(new Posted(event));
+		if (mScheduled.compareAndSet(false, true))
+			mDrainJob.schedule();
+	}
+
+	/**
+	 * Closes channel. Already posted events are still forwarded,
+	 * afterwards dispatcher is released to allow for garbage collection.
+	 */
+	public void close() {
+		mClosed = true;
+		if (mScheduled.compareAndSet(false, true))
+			mDrainJob.schedule();
+	}
+
+	/**
+	 * Getter method for number of events waiting to be forwarded.
+	 *
+	 * @return current queue depth (approximation, queue is concurrently modified).
+	 */
+	public int getQueueDepth() {
+		return mQueue.size();
+	}
+
+	/**
+	 * Forwards all currently queued events as one batch.
+	 */
+	private void drain() {
+		List<IDebugEvent> batch = new ArrayList<IDebugEvent>();
+		Map<IDebugEvent, Long> postTimes = new IdentityHashMap<IDebugEvent, Long>();
+		Posted posted;
+		while ((posted = mQueue.poll()) != null) {
+			batch.add(posted.mEvent);
+			if (posted.mEvent instanceof SuspendedEvent)
+				postTimes.put(posted.mEvent, posted.mTime);
+		}
+		mMetrics.eventBatch(batch.size());
+
+		EventDispatchJob dispatcher = mDispatcher.get();
+		if (dispatcher != null) {
+			for (IDebugEvent coalesced : coalesce(batch)) {
+				dispatcher.addEvent(coalesced);
+				Long time = postTimes.get(coalesced);
+				if (time != null)
+					mMetrics.suspendDelivered(System.nanoTime() - time);
+			}
+		}
+
+		if (mClosed && mQueue.isEmpty()) {
+			mDispatcher.set(null);
+			mMetrics.removeChannel(this);
+		}
+	}
+
+	/**
+	 * Removes redundant events from batch.
+	 *
+	 * Per thread only the last SuspendedEvent is kept, earlier ones carry stale
+	 * stacks. A ResumedEvent directly followed by a SuspendedEvent of the same
+	 * thread is dropped, the thread is shown suspended at the new stack instead.
+	 * Order of all remaining events is kept.
+	 *
+	 * @param batch: events in order they were posted.
+	 * @return events to be forwarded.
+	 */
+	static List<IDebugEvent> coalesce(final List<IDebugEvent> batch) {
+		IDebugEvent[] kept = batch.toArray(new IDebugEvent[batch.size()]);
+
+		// walk backwards, so later events of each thread are already known
+		Map<Thread, IDebugEvent> nextEvent = new HashMap<Thread, IDebugEvent>();
+		Set<Thread> suspendedLater = new HashSet<Thread>();
+		for (int index = kept.length - 1; index >= 0; index--) {
+			IDebugEvent event = kept[index];
+			if (event instanceof SuspendedEvent) {
+				Thread thread = ((SuspendedEvent) event).getThread();
+				if (!suspendedLater.add(thread))
+					kept[index] = null;
+				nextEvent.put(thread, event);
+
+			} else if (event instanceof ResumedEvent) {
+				Thread thread = ((ResumedEvent) event).getThread();
+				if (nextEvent.get(thread) instanceof SuspendedEvent)
+					kept[index] = null;
+				nextEvent.put(thread, event);
+			}
+		}
+
+		List<IDebugEvent> result = new ArrayList<IDebugEvent>(kept.length);
+		for (IDebugEvent event : kept) {
+			if (event != null)
+				result.add(event);
+		}
+		return result;
+	}
+}
@@ -11,15 +11,11 @@
  *******************************************************************************/
 package org.eclipse.ease.lang.python.jython.debugger;
 
-import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
 
-import org.eclipse.core.internal.resources.Workspace;
-import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.Path;
 import org.eclipse.ease.Script;
 import org.eclipse.ease.debugging.IScriptDebugFrame;
+import org.python.core.PyObject;
 
 /**
  * IScriptDebugFrame storing all necessary information from Jython
@@ -30,10 +26,9 @@ import org.eclipse.ease.debugging.IScriptDebugFrame;
  */
 public class JythonDebugFrame implements IScriptDebugFrame {
 	// Members to be displayed in Eclipse DebugView
-	private String mName;
+	private final String mFilename;
 	private int mLineNumber;
-	private Script mScript;
-	private Map<String, Object> mLocals = new HashMap<String, Object>();
+	private final LazyVariablesMap mLocals;
 		
 	/**
 	 * Constructor stores necessary information and creates new script object
@@ -42,33 +37,17 @@ public class JythonDebugFrame implements IScriptDebugFrame {
 	 * This is necessary becaus actual debugger functionality is implemented 
 	 * in edb.py
 	 * 
+	 * Local variables are only converted once they are actually requested,
+	 * workspace path and Script only once the frame is displayed.
+	 *
 	 * @param filename: Filename for current stack-frame
 	 * @param linenumber: Linenumber of current stack-frame
-	 * @param locals: map of all local variables
+	 * @param frame: Jython frame object to lazily read local variables from
 	 */
-	public JythonDebugFrame(String filename, int linenumber, Map<String, Object> locals) {
+	public JythonDebugFrame(String filename, int linenumber, PyObject frame) {
 		mLineNumber = linenumber;
-		mLocals = locals;
-		// Since edb.py can only handle absolute filepaths it is necessary to
-		// convert locaion to path in workspace.
-		String wsPath = "/" + ResourcesPlugin.getWorkspace().getRoot().getLocation().toFile().toURI().relativize(new File(filename).toURI()).getPath();
-		
-		mScript = new Script(new JythonFile(wsPath));
-		mName = wsPath;
-	}
-	
-	/**
-	 * Overrides File class to have accessible constructor.
-	 * @author kloeschmartin
-	 */
-	private class JythonFile extends org.eclipse.core.internal.resources.File {
-		/**
-		 * Public constructor only calls protected superclass constructor.
-		 * @param fn
-		 */
-		public JythonFile(String fn) {
-			super(new Path(fn), (Workspace) ResourcesPlugin.getWorkspace());
-		}
+		mLocals = new LazyVariablesMap(frame);
+		mFilename = filename;
 	}
 
 	// ************************************************************
@@ -82,7 +61,8 @@ public class JythonDebugFrame implements IScriptDebugFrame {
 
 	@Override
 	public Script getScript() {
-		return mScript;
+		// Workspace path and Script are cached to avoid object churn on every suspend.
+		return ScriptCache.getScript(mFilename);
 	}
 
 	@Override
@@ -92,11 +72,21 @@ public class JythonDebugFrame implements IScriptDebugFrame {
 
 	@Override
 	public String getName() {
-		return mName;
+		return ScriptCache.getWorkspacePath(mFilename);
 	}
 
 	@Override
 	public Map<String, Object> getVariables() {
 		return mLocals;
 	}
+
+	/**
+	 * Called when the thread of this frame resumes.
+	 *
+	 * Local variables and collection children not converted yet are
+	 * discarded, they would already show values of a later line.
+	 */
+	void resumed() {
+		mLocals.markStale();
+	}
 }
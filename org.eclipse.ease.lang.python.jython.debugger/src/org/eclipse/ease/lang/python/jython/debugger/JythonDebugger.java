@@ -12,12 +12,21 @@
 package org.eclipse.ease.lang.python.jython.debugger;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.debug.core.DebugEvent;
-import org.eclipse.debug.core.DebugPlugin;
-import org.eclipse.debug.core.model.IBreakpoint;
 import org.eclipse.ease.IExecutionListener;
 import org.eclipse.ease.IScriptEngine;
 import org.eclipse.ease.Script;
@@ -35,9 +44,9 @@ import org.eclipse.ease.debugging.events.ScriptReadyEvent;
 import org.eclipse.ease.debugging.events.ScriptStartRequest;
 import org.eclipse.ease.debugging.events.SuspendedEvent;
 import org.eclipse.ease.debugging.events.TerminateRequest;
-import org.eclipse.ease.lang.python.jython.debugger.model.JythonDebugModelPresentation;
 import org.python.core.Py;
 import org.python.core.PyBoolean;
+import org.python.core.PyInteger;
 import org.python.core.PyObject;
 import org.python.core.PyString;
 import org.python.util.InteractiveInterpreter;
@@ -47,21 +56,44 @@ import org.python.util.InteractiveInterpreter;
  * @author kloeschmartin
  *
  */
-public class JythonDebugger implements IEventProcessor, IExecutionListener {
+public class JythonDebugger implements IEventProcessor, IExecutionListener, IResourceChangeListener {
 	private InteractiveInterpreter mInterpreter;
 	private PyObject mPyDebugger;
 	private String mPyDir;
-	private Thread mThread;
+	
+	/**
+	 * All threads currently suspended in Jython with the stack they suspended in.
+	 */
+	private final Map<Thread, List<IScriptDebugFrame>> mSuspendedThreads = Collections.synchronizedMap(new HashMap<Thread, List<IScriptDebugFrame>>());
 
 	/**
 	 * Declarations for variables and function names in Jython:
 	 */
 	public static final String PyDebuggerName = "eclipse_jython_debugger";
+	
+	/**
+	 * Launch configuration attribute to suspend all threads when one thread suspends.
+	 */
+	public static final String SUSPEND_ALL_ATTRIBUTE = "org.eclipse.ease.lang.python.jython.debugger.suspendAll";
+	
+	/**
+	 * Suspend policies as defined in edb.py
+	 */
+	private static final int PySuspendThread = 0;
+	private static final int PySuspendAll = 1;
 	private static final String PySetDebuggerCmd = "set_debugger";
 	private static final String PySetSuspendOnStartupCmd = "set_suspend_on_startup";
 	private static final String PySetSuspendOnScriptLoad = "set_suspend_on_script_load";
+	private static final String PySetSuspendPolicyCmd = "set_suspend_policy";
+	private static final String PySetWorkspaceRootCmd = "set_workspace_root";
+	private static final String PySetMetricsCmd = "set_metrics";
+	private static final String PySetTracerCmd = "set_tracer";
+	private static final String PySetBreakpointTableCmd = "set_breakpoint_table";
+	private static final String PySetLogpointBufferCmd = "set_logpoint_buffer";
+	private static final String PyClearFileCacheCmd = "clear_file_cache";
 	private static final String PySetBreakpointCmd = "set_break";
-	private static final String PyClearBreakpointsCmd = "clear_all_file_breaks";
+	private static final String PyGetBreakpointsCmd = "get_file_breaks";
+	private static final String PyClearBreakpointCmd = "clear_break";
 
 	private static final String PyStepoverCmd = "step_stepover";
 	private static final String PyStepintoCmd = "step_stepinto";
@@ -70,9 +102,14 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 	private static final String PyTerminateCmd = "step_quit";
 
 	private JythonDebuggerEngine mEngine;
-	private EventDispatchJob mDispatcher;
+	private EventChannel mChannel;
+	private LogpointBuffer mLogpointBuffer;
+	private BreakpointIndex mBreakpointIndex;
+	private final BreakpointTable mBreakpointTable = new BreakpointTable();
 	private boolean mSuspendOnStartup;
 	private boolean mSuspendOnScriptLoad;
+	private boolean mSuspendAll = false;
+	private final JythonDebuggerMetrics mMetrics = JythonDebuggerMetrics.getDefault();
 
 	public JythonDebugger(final JythonDebuggerEngine engine, final boolean suspendOnStartup, final boolean suspendOnScriptLoad) {
 		mEngine = engine;
@@ -89,6 +126,15 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 		mPyDir = pyDir;
 	}
 
+	/**
+	 * Setter method for suspend policy.
+	 * 
+	 * @param suspendAll: true if all threads should suspend when one thread suspends.
+	 */
+	public void setSuspendAll(boolean suspendAll) {
+		mSuspendAll = suspendAll;
+	}
+
 	/**
 	 * Method setting up all necessary objects in Jython.
 	 */
@@ -99,6 +145,16 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 		mPyDebugger.invoke(PySetDebuggerCmd, Py.java2py(this));
 		mPyDebugger.invoke(PySetSuspendOnStartupCmd, new PyBoolean(mSuspendOnStartup));
 		mPyDebugger.invoke(PySetSuspendOnScriptLoad, new PyBoolean(mSuspendOnScriptLoad));
+		mPyDebugger.invoke(PySetSuspendPolicyCmd, new PyInteger(mSuspendAll ? PySuspendAll : PySuspendThread));
+		mPyDebugger.invoke(PySetWorkspaceRootCmd, new PyString(ResourcesPlugin.getWorkspace().getRoot().getLocation().toOSString()));
+		mPyDebugger.invoke(PySetMetricsCmd, mMetrics.isTraceTimingEnabled() ? Py.java2py(mMetrics) : Py.None);
+		mPyDebugger.invoke(PySetBreakpointTableCmd, Py.java2py(mBreakpointTable));
+		mLogpointBuffer = new LogpointBuffer(mEngine.getOutputStream());
+		mPyDebugger.invoke(PySetLogpointBufferCmd, Py.java2py(mLogpointBuffer));
+
+		// Tracer has to be created after metrics are set, it looks up the (possibly timed) trace_dispatch
+		JythonTracer tracer = new JythonTracer(mPyDebugger, mBreakpointTable, mBreakpointIndex, mMetrics.isTraceTimingEnabled() ? mMetrics : null);
+		mPyDebugger.invoke(PySetTracerCmd, Py.java2py(tracer));
 	}
 
 	/**
@@ -107,18 +163,30 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 	 * @param dispatcher: dispatcher for communication between debugger and debug target.
 	 */
 	public void setDispatcher(final EventDispatchJob dispatcher) {
-		mDispatcher = dispatcher;
+		mChannel = new EventChannel(dispatcher);
+	}
+
+	/**
+	 * Setter method for breakpoint index.
+	 * 
+	 * @param breakpointIndex: index of all enabled breakpoints kept up to date by debug target.
+	 */
+	public void setBreakpointIndex(final BreakpointIndex breakpointIndex) {
+		mBreakpointIndex = breakpointIndex;
 	}
 
 	/**
 	 * Helper method to raise event via dispatcher.
+	 * 
+	 * Events are posted to a lock-free channel, so Jython threads never block
+	 * on the dispatcher.
+	 * 
 	 * @param event: Debug event to be raised.
 	 */
 	private void fireDispatchEvent(final IDebugEvent event) {
-		synchronized (mDispatcher) {
-			if (mDispatcher != null)
-				mDispatcher.addEvent(event);
-		}
+		final EventChannel channel = mChannel;
+		if (channel != null)
+			channel.post(event);
 	}
 
 	/**
@@ -131,16 +199,21 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 		switch (status) {
 		case ENGINE_START:
 			setupJythonObjects();
+			ResourcesPlugin.getWorkspace().addResourceChangeListener(this, IResourceChangeEvent.POST_CHANGE);
 			fireDispatchEvent(new EngineStartedEvent());
 			break;
 		case ENGINE_END:
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+
+			// write remaining logpoint messages before terminated event
+			if (mLogpointBuffer != null)
+				mLogpointBuffer.close();
 			fireDispatchEvent(new EngineTerminatedEvent());
 
-			// allow for garbage collection
+			// channel forwards pending events, then releases dispatcher for garbage collection
 			mEngine = null;
-			synchronized (mDispatcher) {
-				mDispatcher = null;
-			}
+			if (mChannel != null)
+				mChannel.close();
 			break;
 
 		default:
@@ -149,6 +222,43 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 		}
 	}
 
+	/**
+	 * Resource change handler called by Eclipse workspace.
+	 * 
+	 * Clears cached filename classifications in Jython and evicts cached
+	 * scripts of affected paths from ScriptCache if files were added, removed
+	 * or moved.
+	 */
+	@Override
+	public void resourceChanged(IResourceChangeEvent event) {
+		if (event.getDelta() == null) return;
+		
+		// Content changes do not influence classification or cached scripts, only check for added or removed resources
+		// (moved resources are reported as removed from the old and added to the new location)
+		final boolean[] structureChanged = new boolean[] { false };
+		try {
+			event.getDelta().accept(new IResourceDeltaVisitor() {
+				@Override
+				public boolean visit(IResourceDelta delta) throws CoreException {
+					if (delta.getKind() == IResourceDelta.ADDED || delta.getKind() == IResourceDelta.REMOVED) {
+						ScriptCache.evict(delta.getFullPath().toString());
+						structureChanged[0] = true;
+						return false;
+					}
+					return true;
+				}
+			});
+		} catch (CoreException e) {
+			ScriptCache.clear();
+			structureChanged[0] = true;
+		}
+		
+		final PyObject pyDebugger = mPyDebugger;
+		if (structureChanged[0] && pyDebugger != null) {
+			pyDebugger.invoke(PyClearFileCacheCmd);
+		}
+	}
+
 	/**
 	 * Function called to handle incoming event.
 	 * 
@@ -175,26 +285,56 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 	 * 
 	 * If other type given, then resume will be called.
 	 * 
+	 * Only the thread of the request is resumed, if no thread is given 
+	 * all suspended threads are resumed.
+	 * 
 	 * @param event: ResumeRequest containing necessary information for action to be performed
 	 */
 	private void handleResumeRequest(ResumeRequest event) {
+		// Threads to be resumed
+		List<Thread> threads = new ArrayList<Thread>();
+		PyObject pyThread;
+		if (event.getThread() != null) {
+			threads.add(event.getThread());
+			pyThread = Py.java2py(event.getThread());
+		} else {
+			synchronized (mSuspendedThreads) {
+				threads.addAll(mSuspendedThreads.keySet());
+			}
+			pyThread = Py.None;
+		}
+		
+		// Thread has to be marked as running before Jython continues it, otherwise
+		// it could suspend again before and its new stack would be removed here.
+		// Locals must not be read after the thread continued.
+		for (Thread thread : threads) {
+			List<IScriptDebugFrame> stack = mSuspendedThreads.remove(thread);
+			if (stack != null) {
+				for (IScriptDebugFrame frame : stack) {
+					if (frame instanceof JythonDebugFrame) {
+						((JythonDebugFrame) frame).resumed();
+					}
+				}
+				fireDispatchEvent(new ResumedEvent(thread, event.getType()));
+			}
+		}
+		
 		// Simply switch over the type and call according function
 		switch (event.getType()) {
 		case DebugEvent.STEP_INTO:
-			mPyDebugger.invoke(PyStepintoCmd);
+			mPyDebugger.invoke(PyStepintoCmd, pyThread);
 			break;
 		case DebugEvent.STEP_OVER:
-			mPyDebugger.invoke(PyStepoverCmd);
+			mPyDebugger.invoke(PyStepoverCmd, pyThread);
 			break;
 		case DebugEvent.STEP_RETURN:
-			mPyDebugger.invoke(PyStepoutCmd);
+			mPyDebugger.invoke(PyStepoutCmd, pyThread);
 			break;
 		default:
 			// TODO: think if it would be better to only handle resume request
-			mPyDebugger.invoke(PyResumeCmd);
+			mPyDebugger.invoke(PyResumeCmd, pyThread);
 			break;
 		}
-		fireDispatchEvent(new ResumedEvent(mThread, event.getType()));
 	}
 
 	/**
@@ -210,10 +350,15 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 	/**
 	 * Function called by Jython Edb object firing a SuspendedEvent with the
 	 * given stacktrace
+	 * 
+	 * @param thread: Thread that suspended.
+	 * @param stack: current stack of suspended thread.
+	 * @param detail: reason for suspension (DebugEvent.BREAKPOINT, STEP_END, ...).
 	 */
-	public void fireSuspendEvent(Thread thread, List<IScriptDebugFrame> stack) {
-		mThread = thread;
-		fireDispatchEvent(new SuspendedEvent(1, thread, stack));
+	public void fireSuspendEvent(Thread thread, List<IScriptDebugFrame> stack, int detail) {
+		mSuspendedThreads.put(thread, stack);
+		mMetrics.suspended(stack.size());
+		fireDispatchEvent(new SuspendedEvent(detail, thread, stack));
 	}
 
 	/**
@@ -238,41 +383,80 @@ public class JythonDebugger implements IEventProcessor, IExecutionListener {
 	}
 
 	/**
-	 * Function called by Jython Edb object when a new file is being executed.
+	 * Function called by Jython Edb object to check if breakpoints changed.
+	 * 
+	 * Cheap enough to be called on every file switch and resume.
+	 * 
+	 * @return current version of the breakpoint set.
+	 */
+	public long getBreakpointVersion() {
+		if (mBreakpointIndex == null) return 0;
+		return mBreakpointIndex.getVersion();
+	}
+
+	/**
+	 * Function called by Jython Edb object when breakpoint version changed.
 	 * 
-	 * Checks if it is necessary to set new breakpoint in Jython
+	 * Only updates breakpoints in Jython for files that changed since given version.
+	 * Existing breakpoints are updated in place, only lines without breakpoint
+	 * anymore are cleared.
 	 * 
-	 * @param filename: filename of new Jython file currently being executed.
+	 * @param sinceVersion: breakpoint version of last sync in Jython.
+	 * @return breakpoint version Jython is in sync with now.
 	 */
-	public void checkBreakpoints(String filename) {
+	public long syncBreakpoints(long sinceVersion) {
 		// Simple check to see if debugger already Garbage-collected
-		if (mPyDebugger == null) return;
+		if (mPyDebugger == null || mBreakpointIndex == null) return sinceVersion;
 		
-		// BreakpointInfo object is used to have easier access to Breakpoint information
-		BreakpointInfo info;
-		// Iterate over all Jython breakpoints and set the ones matching new file.
-		mPyDebugger.invoke(PyClearBreakpointsCmd, new PyString(filename));
-		for (IBreakpoint bp : DebugPlugin.getDefault().getBreakpointManager().getBreakpoints(JythonDebugModelPresentation.ID)) {
-			// simple check to see if Breakpoint is enabled. Try - catch necessary
-			try {
-				if (!bp.isEnabled()) {
-					continue;
-				}
-			} catch (CoreException e) {
-				continue;
+		// Read version first, changes happening while syncing will be synced again next time
+		long start = System.nanoTime();
+		long version = mBreakpointIndex.getVersion();
+		for (String filename : mBreakpointIndex.getChangedFiles(sinceVersion)) {
+			PyString pyFilename = new PyString(filename);
+			
+			// Lines set in Jython before syncing, get_file_breaks returns bdb's own list
+			List<Integer> oldLines = new ArrayList<Integer>();
+			for (PyObject line : mPyDebugger.invoke(PyGetBreakpointsCmd, pyFilename).asIterable()) {
+				oldLines.add(line.asInt());
 			}
-			info = new BreakpointInfo(bp);
 			
-			// If filename matches add new breakpoint
-			if (info.getFilename().equals(filename)) {
+			Set<Integer> lines = new HashSet<Integer>();
+			for (BreakpointInfo info : mBreakpointIndex.getBreakpoints(filename)) {
 				PyObject[] args = new PyObject[1];
 				args[0] = Py.java2py(info);
-			
+				
 				// We can call set_break since it will update existing
 				// breakpoint if necessary.
 				mPyDebugger.invoke(PySetBreakpointCmd, args);
+				lines.add(info.getLinenumber());
+			}
+			
+			// Only remove breakpoints that no longer exist (removed, moved or disabled)
+			for (Integer line : oldLines) {
+				if (!lines.contains(line)) {
+					mPyDebugger.invoke(PyClearBreakpointCmd, pyFilename, new PyInteger(line));
+				}
 			}
 		}
+		mMetrics.breakpointSync(System.nanoTime() - start);
+		return version;
+	}
+
+	/**
+	 * Function called by Jython Edb object to get compiled code of script to run.
+	 * 
+	 * Code is cached by CompiledCodeCache so unchanged scripts are not compiled again.
+	 * 
+	 * @param filename: absolute filename of script to be run.
+	 * @return compiled code object or null if it could not be compiled
+	 *         (Edb falls back to execfile to report errors).
+	 */
+	public PyObject getCompiledCode(String filename) {
+		try {
+			return CompiledCodeCache.getCode(filename);
+		} catch (Exception e) {
+			return null;
+		}
 	}
 
 	/**
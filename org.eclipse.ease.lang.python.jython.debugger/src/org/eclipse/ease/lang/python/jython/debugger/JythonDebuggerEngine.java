@@ -13,16 +13,28 @@
 package org.eclipse.ease.lang.python.jython.debugger;
 
 import java.io.File;
+import java.io.IOException;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.debug.core.ILaunchManager;
 import org.eclipse.ease.IDebugEngine;
 import org.eclipse.ease.Script;
 import org.eclipse.ease.debugging.EventDispatchJob;
 import org.eclipse.ease.lang.python.jython.JythonScriptEngine;
+import org.eclipse.ease.lang.python.jython.debugger.coverage.CoverageData;
+import org.eclipse.ease.lang.python.jython.debugger.coverage.CoverageTracer;
 import org.eclipse.ease.lang.python.jython.debugger.model.JythonDebugTarget;
+import org.eclipse.ease.lang.python.jython.debugger.model.ReplayDebugTarget;
+import org.eclipse.ease.lang.python.jython.debugger.profiler.FunctionProfileView;
+import org.eclipse.ease.lang.python.jython.debugger.profiler.FunctionProfiler;
+import org.eclipse.ease.lang.python.jython.debugger.profiler.SamplingProfiler;
+import org.eclipse.ease.lang.python.jython.debugger.recording.ExecutionRecorder;
+import org.eclipse.ease.lang.python.jython.debugger.recording.ReplayDebugger;
 import org.python.core.Py;
 import org.python.core.PyList;
 import org.python.core.PyString;
@@ -35,11 +47,58 @@ import org.python.core.PyString;
  * when file is to be debugged.
  */
 public class JythonDebuggerEngine extends JythonScriptEngine implements IDebugEngine {
+	/**
+	 * Launch configuration attribute to profile the script instead of debugging it.
+	 * Profiling is also used if the launch is started in profile mode.
+	 */
+	public static final String PROFILE_ATTRIBUTE = "org.eclipse.ease.lang.python.jython.debugger.profile";
+
+	/**
+	 * Launch configuration attribute selecting the profiler used in profile mode:
+	 * PROFILER_SAMPLING (default) or PROFILER_FUNCTIONS.
+	 */
+	public static final String PROFILER_ATTRIBUTE = "org.eclipse.ease.lang.python.jython.debugger.profiler";
+	public static final String PROFILER_SAMPLING = "sampling";
+	public static final String PROFILER_FUNCTIONS = "functions";
+
+	/**
+	 * Launch configuration attribute to record line coverage instead of debugging.
+	 */
+	public static final String COVERAGE_ATTRIBUTE = "org.eclipse.ease.lang.python.jython.debugger.coverage";
+
+	/**
+	 * Launch configuration attribute for coverage file to merge recorded lines into.
+	 * Defaults to coverage/coverage.pycov in the plugin's state location.
+	 */
+	public static final String COVERAGE_FILE_ATTRIBUTE = "org.eclipse.ease.lang.python.jython.debugger.coverageFile";
+
+	/**
+	 * Launch configuration attribute to record every executed line to a trace file
+	 * in the plugin's state location instead of debugging.
+	 */
+	public static final String RECORD_ATTRIBUTE = "org.eclipse.ease.lang.python.jython.debugger.record";
+
+	/**
+	 * Launch configuration attribute with trace file to replay instead of running the script.
+	 */
+	public static final String REPLAY_ATTRIBUTE = "org.eclipse.ease.lang.python.jython.debugger.replay";
+
 	private JythonDebugger mDebugger = null;
+	private ReplayDebugger mReplayDebugger = null;
 	
 	private boolean mDebugRun;
+	private boolean mProfileRun = false;
+	private String mProfiler = PROFILER_SAMPLING;
+	private boolean mCoverageRun = false;
+	private String mCoverageFile = null;
+	private boolean mRecordRun = false;
 	private String mPyDir;
 	
+	/**
+	 * True if precompiled debugger modules can be imported.
+	 */
+	private boolean mPrecompiled = false;
+	
 	public JythonDebuggerEngine() {
 		super();
 		mPyDir = getPyDir();
@@ -71,11 +130,21 @@ public class JythonDebuggerEngine extends JythonScriptEngine implements IDebugEn
 		if (!super.setupEngine())
 			return false;
 
+		// coverage tracer needs coverage_lines module
+		if (mCoverageRun)
+			addPyDirToJythonPath();
+
 		// Check if currently run in debug mode
 		if (mDebugger != null) {
 			// add python directory to Jython search path
 			addPyDirToJythonPath();
 			
+			// import debugger modules already compiled in background
+			if (mPrecompiled) {
+				DebuggerModulePrecompiler.getDefault(mPyDir).importModules(mEngine.getSystemState());
+				mPrecompiled = false;
+			}
+			
 			// set objects in JythonDebugTarget
 			// FIXME: use events to correctly setup interpreter in JythonDebugTarget
 			mDebugger.setInterpreter(mEngine);
@@ -91,7 +160,17 @@ public class JythonDebuggerEngine extends JythonScriptEngine implements IDebugEn
 	 */
 	@Override
 	protected Object execute(final Script script, final Object reference, final String fileName, final boolean uiThread) throws Exception {
-		if (uiThread || !mDebugRun || fileName == null) {
+		if (mReplayDebugger != null && !uiThread && fileName != null) {
+			// recorded script is not run again, replay takes its place
+			mReplayDebugger.run(script, getErrorStream());
+			return null;
+		} else if (mRecordRun && !uiThread && fileName != null) {
+			return executeRecorded(script, reference, fileName);
+		} else if (mCoverageRun && !uiThread && fileName != null) {
+			return executeCoverage(script, reference, fileName);
+		} else if (mProfileRun && !uiThread && fileName != null) {
+			return executeProfiled(script, reference, fileName);
+		} else if (uiThread || !mDebugRun || fileName == null) {
 			return super.execute(script, reference, fileName, uiThread);
 		} else {
 			// FIXME: copied code from JythonScriptEngine necessary for imports.
@@ -122,6 +201,109 @@ public class JythonDebuggerEngine extends JythonScriptEngine implements IDebugEn
 		}
 	}
 
+	/**
+	 * Executes script with the profiler selected by PROFILER_ATTRIBUTE.
+	 * 
+	 * Sampled stacks are written in collapsed format to the plugin's state location,
+	 * the filename is printed to the engine's output. Function profiles are shown
+	 * in FunctionProfileView.
+	 */
+	private Object executeProfiled(final Script script, final Object reference, final String fileName) throws Exception {
+		if (PROFILER_FUNCTIONS.equals(mProfiler)) {
+			FunctionProfiler profiler = new FunctionProfiler();
+			profiler.start();
+			try {
+				return super.execute(script, reference, fileName, false);
+			} finally {
+				profiler.stop();
+				FunctionProfileView.showResults(profiler.getResults());
+			}
+		}
+
+		SamplingProfiler profiler = new SamplingProfiler(mEngine.getSystemState());
+		profiler.start();
+		try {
+			return super.execute(script, reference, fileName, false);
+		} finally {
+			profiler.stop();
+			writeProfile(profiler, fileName);
+		}
+	}
+
+	/**
+	 * Helper method writing collapsed stacks of profiler to state location.
+	 */
+	private void writeProfile(final SamplingProfiler profiler, final String fileName) {
+		File directory = new File(Platform.getStateLocation(Platform.getBundle(Activator.PLUGIN_ID)).toFile(), "profiles");
+		File file = new File(directory, new File(fileName).getName() + "." + System.currentTimeMillis() + ".collapsed");
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Could not create " + directory);
+			profiler.writeCollapsed(file);
+			getOutputStream().println(String.format("Profile of %s (%d samples) written to %s", fileName, profiler.getSampleCount(), file.getAbsolutePath()));
+		} catch (IOException e) {
+			getErrorStream().println("Could not write profile: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Executes script recording executed lines of workspace files.
+	 * 
+	 * Recorded lines are merged into the coverage file, so consecutive runs accumulate.
+	 */
+	private Object executeCoverage(final Script script, final Object reference, final String fileName) throws Exception {
+		CoverageTracer tracer = new CoverageTracer();
+		tracer.start();
+		try {
+			return super.execute(script, reference, fileName, false);
+		} finally {
+			tracer.stop();
+			writeCoverage(tracer.getCoverage(), fileName);
+		}
+	}
+
+	/**
+	 * Helper method merging coverage data into coverage file.
+	 */
+	private void writeCoverage(final CoverageData coverage, final String fileName) {
+		File file = (mCoverageFile != null) ? new File(mCoverageFile) : new File(new File(Platform.getStateLocation(Platform.getBundle(Activator.PLUGIN_ID)).toFile(), "coverage"), "coverage.pycov");
+		File directory = file.getAbsoluteFile().getParentFile();
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Could not create " + directory);
+			coverage.mergeInto(file);
+			getOutputStream().println(String.format("Coverage of %s (%d lines in %d files) merged into %s", fileName, coverage.getLineCount(), coverage.getFiles().size(), file.getAbsolutePath()));
+		} catch (IOException e) {
+			getErrorStream().println("Could not write coverage: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Executes script recording every event to a trace file in the plugin's state location.
+	 * 
+	 * The trace file can be replayed by launching with REPLAY_ATTRIBUTE,
+	 * its filename is printed to the engine's output.
+	 */
+	private Object executeRecorded(final Script script, final Object reference, final String fileName) throws Exception {
+		File directory = new File(Platform.getStateLocation(Platform.getBundle(Activator.PLUGIN_ID)).toFile(), "recordings");
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create " + directory);
+
+		ExecutionRecorder recorder = new ExecutionRecorder(new File(directory, new File(fileName).getName() + "." + System.currentTimeMillis() + ".trace"));
+		recorder.start();
+		try {
+			return super.execute(script, reference, fileName, false);
+		} finally {
+			recorder.stop();
+			try {
+				recorder.close();
+				getOutputStream().println(String.format("Recording of %s (%d records%s) written to %s", fileName, recorder.getRecordCount(), recorder.isWrapped() ? ", oldest events overwritten" : "", recorder.getTraceFile().getAbsolutePath()));
+			} catch (IOException e) {
+				getErrorStream().println("Could not write recording: " + e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Adds the plugin's python directory to Jython search path.
 	 * Necessary to have Python Edb debugger class available.
@@ -136,17 +318,95 @@ public class JythonDebuggerEngine extends JythonScriptEngine implements IDebugEn
 		}
     }
 	
+	/**
+	 * Helper method to read boolean attribute from launch configuration.
+	 * 
+	 * @param launch: launch to read configuration from.
+	 * @param attribute: name of attribute.
+	 * @param defaultValue: value returned if attribute is not set.
+	 * @return attribute value or defaultValue.
+	 */
+	private static boolean getLaunchAttribute(ILaunch launch, String attribute, boolean defaultValue) {
+		ILaunchConfiguration configuration = launch.getLaunchConfiguration();
+		if (configuration == null)
+			return defaultValue;
+		
+		try {
+			return configuration.getAttribute(attribute, defaultValue);
+		} catch (CoreException e) {
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Helper method to read string attribute from launch configuration.
+	 * 
+	 * @param launch: launch to read configuration from.
+	 * @param attribute: name of attribute.
+	 * @param defaultValue: value returned if attribute is not set.
+	 * @return attribute value or defaultValue.
+	 */
+	private static String getLaunchAttribute(ILaunch launch, String attribute, String defaultValue) {
+		ILaunchConfiguration configuration = launch.getLaunchConfiguration();
+		if (configuration == null)
+			return defaultValue;
+		
+		try {
+			return configuration.getAttribute(attribute, defaultValue);
+		} catch (CoreException e) {
+			return defaultValue;
+		}
+	}
+	
 	/**
 	 * Creates new JythonDebugTarget, JythonDebugger and sets up EventHandlers
 	 */
 	@Override
 	public void setupDebugger(ILaunch launch, boolean suspendOnStartup, boolean suspendOnScriptLoad, boolean showDynamicCode) {
+		// Coverage mode records lines without ever suspending, no debugger needed
+		if (getLaunchAttribute(launch, COVERAGE_ATTRIBUTE, false)) {
+			mCoverageRun = true;
+			mCoverageFile = getLaunchAttribute(launch, COVERAGE_FILE_ATTRIBUTE, (String) null);
+			return;
+		}
+
+		// Replay steps through a recording with the usual debug UI, the script is not run
+		String replay = getLaunchAttribute(launch, REPLAY_ATTRIBUTE, (String) null);
+		if (replay != null) {
+			ReplayDebugTarget target = new ReplayDebugTarget(launch);
+			launch.addDebugTarget(target);
+
+			mReplayDebugger = new ReplayDebugger(new File(replay), target.getBreakpointIndex());
+			target.setReplayDebugger(mReplayDebugger);
+
+			final EventDispatchJob dispatcher = new EventDispatchJob(target, mReplayDebugger);
+			target.setDispatcher(dispatcher);
+			mReplayDebugger.setDispatcher(dispatcher);
+			dispatcher.schedule();
+			return;
+		}
+
+		if (getLaunchAttribute(launch, RECORD_ATTRIBUTE, false)) {
+			mRecordRun = true;
+			return;
+		}
+
+		// Profile mode samples the script instead of tracing it, no debugger needed
+		if (ILaunchManager.PROFILE_MODE.equals(launch.getLaunchMode()) || getLaunchAttribute(launch, PROFILE_ATTRIBUTE, false)) {
+			mProfileRun = true;
+			mProfiler = getLaunchAttribute(launch, PROFILER_ATTRIBUTE, PROFILER_SAMPLING);
+			return;
+		}
+
 		JythonDebugTarget target = new JythonDebugTarget(launch, suspendOnStartup);
 		mDebugRun = true;
 		launch.addDebugTarget(target);
 
 		final JythonDebugger debugger = new JythonDebugger(this, suspendOnStartup, suspendOnScriptLoad);
+		debugger.setBreakpointIndex(target.getBreakpointIndex());
+		debugger.setSuspendAll(getLaunchAttribute(launch, JythonDebugger.SUSPEND_ALL_ATTRIBUTE, false));
 		setDebugger(debugger);
+		mPrecompiled = DebuggerModulePrecompiler.getDefault(mPyDir).isReady();
 		
 		final EventDispatchJob dispatcher = new EventDispatchJob(target, debugger);
 		target.setDispatcher(dispatcher);
@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of all Jython debug sessions, registered as MBean
+ * {@value #OBJECT_NAME} on the platform MBean server.
+ *
+ * Counters are updated lock-free by the debugger. Trace callback timing
+ * has to be done in Jython and is therefore only enabled on request, either
+ * via JConsole or by setting system property {@value #TRACE_TIMING_PROPERTY}.
+ *
+ * @author kloeschmartin
+ */
+public class JythonDebuggerMetrics implements JythonDebuggerMetricsMBean {
+	/**
+	 * Name the metrics are registered with.
+	 */
+	public static final String OBJECT_NAME = "org.eclipse.ease.lang.python.jython.debugger:type=JythonDebuggerMetrics";
+
+	/**
+	 * System property to enable trace timing on startup.
+	 */
+	public static final String TRACE_TIMING_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.traceTiming";
+
+	private static final long NANOS_PER_MICRO = 1000;
+	private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+	private static JythonDebuggerMetrics mInstance = null;
+
+	private volatile boolean mTraceTimingEnabled = Boolean.getBoolean(TRACE_TIMING_PROPERTY);
+
+	private final AtomicLong mOtherCallbacks = new AtomicLong();
+	private final MetricsHistogram mDispatchCall = new MetricsHistogram();
+	private final MetricsHistogram mDispatchLine = new MetricsHistogram();
+	private final MetricsHistogram mBreakpointSync = new MetricsHistogram();
+	private final MetricsHistogram mSuspendLatency = new MetricsHistogram();
+	private final MetricsHistogram mFramesPerSuspend = new MetricsHistogram();
+	private final MetricsHistogram mLocalsPerFrame = new MetricsHistogram();
+	private final AtomicLong mEventQueueMaxDepth = new AtomicLong();
+
+	/**
+	 * Event channels of running debug sessions, used for queue depth.
+	 */
+	private final Set<EventChannel> mChannels = new CopyOnWriteArraySet<EventChannel>();
+
+	/**
+	 * Trace callback count and time of last rate calculation, guarded by this.
+	 */
+	private long mLastRateCallbacks = 0;
+	private long mLastRateTime = System.nanoTime();
+
+	/**
+	 * Getter method for shared metrics. Registers MBean on first call.
+	 *
+	 * @return shared metrics instance.
+	 */
+	public static synchronized JythonDebuggerMetrics getDefault() {
+		if (mInstance == null) {
+			mInstance = new JythonDebuggerMetrics();
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if (!server.isRegistered(name))
+					server.registerMBean(mInstance, name);
+			} catch (Exception e) {
+				// Metrics still work, they are just not visible in JConsole
+			}
+		}
+		return mInstance;
+	}
+
+	/**
+	 * Unregisters MBean if it was registered.
+	 */
+	public static synchronized void unregister() {
+		if (mInstance == null)
+			return;
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+		} catch (Exception e) {
+			// nothing to clean up
+		}
+		mInstance = null;
+	}
+
+	// ************************************************************
+	// Recording methods used by debugger
+	// ************************************************************
+
+	/**
+	 * Function called by Jython Edb object after each trace callback if trace timing is enabled.
+	 *
+	 * @param event: trace event ("call", "line", "return", "exception").
+	 * @param nanos: time spent in callback excluding time suspended.
+	 */
+	public void traceCallback(final String event, final long nanos) {
+		if ("line".equals(event))
+			mDispatchLine.record(nanos);
+		else if ("call".equals(event))
+			mDispatchCall.record(nanos);
+		else
+			mOtherCallbacks.incrementAndGet();
+	}
+
+	public void breakpointSync(final long nanos) {
+		mBreakpointSync.record(nanos);
+	}
+
+	public void suspended(final int frames) {
+		mFramesPerSuspend.record(frames);
+	}
+
+	public void suspendDelivered(final long nanos) {
+		mSuspendLatency.record(nanos);
+	}
+
+	public void localsMarshalled(final int locals) {
+		mLocalsPerFrame.record(locals);
+	}
+
+	public void eventBatch(final int size) {
+		long max;
+		while (size > (max = mEventQueueMaxDepth.get()) && !mEventQueueMaxDepth.compareAndSet(max, size)) {
+			// retry
+		}
+	}
+
+	public void addChannel(final EventChannel channel) {
+		mChannels.add(channel);
+	}
+
+	public void removeChannel(final EventChannel channel) {
+		mChannels.remove(channel);
+	}
+
+	// ************************************************************
+	// JythonDebuggerMetricsMBean
+	// ************************************************************
+
+	@Override
+	public boolean isTraceTimingEnabled() {
+		return mTraceTimingEnabled;
+	}
+
+	@Override
+	public void setTraceTimingEnabled(final boolean enabled) {
+		mTraceTimingEnabled = enabled;
+	}
+
+	@Override
+	public long getTraceCallbacks() {
+		return mDispatchCall.getCount() + mDispatchLine.getCount() + mOtherCallbacks.get();
+	}
+
+	/**
+	 * Rate since last call of this method (i.e. since last JConsole refresh).
+	 */
+	@Override
+	public synchronized double getTraceCallbacksPerSecond() {
+		long callbacks = getTraceCallbacks();
+		long now = System.nanoTime();
+		double rate = (now == mLastRateTime) ? 0 : (callbacks - mLastRateCallbacks) * 1e9 / (now - mLastRateTime);
+		mLastRateCallbacks = callbacks;
+		mLastRateTime = now;
+		return Math.max(rate, 0);
+	}
+
+	@Override
+	public long getDispatchCallCount() {
+		return mDispatchCall.getCount();
+	}
+
+	@Override
+	public double getDispatchCallMeanMicros() {
+		return mDispatchCall.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getDispatchCallP99Micros() {
+		return mDispatchCall.getPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getDispatchCallTotalMillis() {
+		return mDispatchCall.getSum() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getDispatchLineCount() {
+		return mDispatchLine.getCount();
+	}
+
+	@Override
+	public double getDispatchLineMeanMicros() {
+		return mDispatchLine.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getDispatchLineP99Micros() {
+		return mDispatchLine.getPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getDispatchLineTotalMillis() {
+		return mDispatchLine.getSum() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getBreakpointSyncCount() {
+		return mBreakpointSync.getCount();
+	}
+
+	@Override
+	public double getBreakpointSyncMeanMicros() {
+		return mBreakpointSync.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getBreakpointSyncMaxMicros() {
+		return mBreakpointSync.getMax() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getSuspendCount() {
+		return mFramesPerSuspend.getCount();
+	}
+
+	@Override
+	public double getSuspendLatencyMeanMicros() {
+		return mSuspendLatency.getMean() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getSuspendLatencyP99Micros() {
+		return mSuspendLatency.getPercentile(99) / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public long getSuspendLatencyMaxMicros() {
+		return mSuspendLatency.getMax() / NANOS_PER_MICRO;
+	}
+
+	@Override
+	public double getFramesPerSuspendMean() {
+		return mFramesPerSuspend.getMean();
+	}
+
+	@Override
+	public long getFramesPerSuspendMax() {
+		return mFramesPerSuspend.getMax();
+	}
+
+	@Override
+	public long getLocalsMarshalled() {
+		return mLocalsPerFrame.getSum();
+	}
+
+	@Override
+	public double getLocalsPerFrameMean() {
+		return mLocalsPerFrame.getMean();
+	}
+
+	@Override
+	public int getEventQueueDepth() {
+		int depth = 0;
+		for (EventChannel channel : mChannels)
+			depth += channel.getQueueDepth();
+		return depth;
+	}
+
+	@Override
+	public long getEventQueueMaxDepth() {
+		return mEventQueueMaxDepth.get();
+	}
+
+	@Override
+	public void reset() {
+		mOtherCallbacks.set(0);
+		mDispatchCall.reset();
+		mDispatchLine.reset();
+		mBreakpointSync.reset();
+		mSuspendLatency.reset();
+		mFramesPerSuspend.reset();
+		mLocalsPerFrame.reset();
+		mEventQueueMaxDepth.set(0);
+		synchronized (this) {
+			mLastRateCallbacks = 0;
+			mLastRateTime = System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+/**
+ * Management interface of JythonDebuggerMetrics as shown in JConsole.
+ *
+ * Times are given in microseconds unless stated otherwise.
+ * Percentiles are approximated by power-of-two buckets.
+ *
+ * @author kloeschmartin
+ */
+public interface JythonDebuggerMetricsMBean {
+	/**
+	 * Trace timing measures every trace callback in Jython and therefore slows
+	 * down debugging itself. Only affects debug sessions started afterwards.
+	 */
+	boolean isTraceTimingEnabled();
+
+	void setTraceTimingEnabled(boolean enabled);
+
+	// Trace callbacks (only recorded with trace timing enabled)
+	long getTraceCallbacks();
+
+	double getTraceCallbacksPerSecond();
+
+	long getDispatchCallCount();
+
+	double getDispatchCallMeanMicros();
+
+	long getDispatchCallP99Micros();
+
+	long getDispatchCallTotalMillis();
+
+	long getDispatchLineCount();
+
+	double getDispatchLineMeanMicros();
+
+	long getDispatchLineP99Micros();
+
+	long getDispatchLineTotalMillis();
+
+	// Breakpoint synchronization (replacement of checkBreakpoints)
+	long getBreakpointSyncCount();
+
+	double getBreakpointSyncMeanMicros();
+
+	long getBreakpointSyncMaxMicros();
+
+	// Suspends
+	long getSuspendCount();
+
+	double getSuspendLatencyMeanMicros();
+
+	long getSuspendLatencyP99Micros();
+
+	long getSuspendLatencyMaxMicros();
+
+	double getFramesPerSuspendMean();
+
+	long getFramesPerSuspendMax();
+
+	long getLocalsMarshalled();
+
+	double getLocalsPerFrameMean();
+
+	// Event channel
+	int getEventQueueDepth();
+
+	long getEventQueueMaxDepth();
+
+	/**
+	 * Resets all counters and histograms.
+	 */
+	void reset();
+}
@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyException;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.core.PyTuple;
+import org.python.core.ThreadState;
+import org.python.core.TraceFunction;
+
+/**
+ * Trace function of a single thread handling the hot path of Edb in Java.
+ *
+ * While the thread is continuing, calls and lines are checked against the
+ * BreakpointTable maintained by Edb. Edb.trace_dispatch is only called for
+ * lines with a breakpoint. While stepping (or if another thread requested
+ * a suspend) every event is delegated to Edb.trace_dispatch.
+ *
+ * Step over and step out only stop in the step frame and its callers.
+ * Frames called below the step frame are handled like while continuing,
+ * so a stepped over call runs without Python tracing unless it reaches
+ * a breakpoint.
+ *
+ * Used as global and local trace function, one instance per thread so
+ * no state is shared on the hot path.
+ *
+ * @author kloeschmartin
+ */
+public class JythonTraceFunction extends TraceFunction {
+	private static final PyString PyCallEvent = new PyString("call");
+	private static final PyString PyLineEvent = new PyString("line");
+	private static final PyString PyReturnEvent = new PyString("return");
+	private static final PyString PyExceptionEvent = new PyString("exception");
+
+	/**
+	 * Marker for code objects that can never stop while continuing.
+	 */
+	private static final long[] NO_STOP = new long[0];
+
+	private final JythonTracer mTracer;
+
+	/**
+	 * Step state mirrored from Edb's thread context.
+	 */
+	private volatile boolean mStepping;
+
+	/**
+	 * Frame (bdb stopframe) of an active step over or step out, null if every frame may stop.
+	 */
+	private volatile PyFrame mStepFrame = null;
+
+	/**
+	 * Frame last found below mStepFrame, consecutive events mostly belong to it or its callees.
+	 */
+	private PyFrame mBelowFrame = null;
+
+	/**
+	 * Set by other threads if this thread should suspend (SUSPEND_ALL policy).
+	 */
+	private volatile boolean mSuspendRequested = false;
+
+	/**
+	 * Flag to signalize that Edb is currently called from this trace function.
+	 */
+	private boolean mInCallback = false;
+
+	/**
+	 * Breakpoint version this thread has last synced Edb with.
+	 */
+	private long mBreakpointVersion;
+
+	/**
+	 * Breakpoint line bitsets per code object, only valid for mCodeGeneration.
+	 */
+	private final Map<PyObject, long[]> mCodeLines = new IdentityHashMap<PyObject, long[]>();
+	private int mCodeGeneration = -1;
+
+	/**
+	 * Last looked up code object, consecutive lines mostly belong to the same frame.
+	 */
+	private PyObject mLastCode = null;
+	private long[] mLastLines = null;
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param tracer: shared tracer state.
+	 * @param stepping: true if thread is currently stepping.
+	 */
+	JythonTraceFunction(final JythonTracer tracer, final boolean stepping) {
+		mTracer = tracer;
+		mStepping = stepping;
+		mBreakpointVersion = tracer.getBreakpointVersion();
+	}
+
+	/**
+	 * Function called by Jython Edb object when step state of this thread changes.
+	 *
+	 * @param stepping: true if a step command is active.
+	 */
+	public void setStepping(final boolean stepping) {
+		mStepping = stepping;
+	}
+
+	/**
+	 * Function called by Jython Edb object when a step command starts.
+	 *
+	 * @param stepFrame: frame below which no step can end (bdb stopframe of
+	 *            step over/out), None if every frame may stop (step into).
+	 */
+	public void setStepFrame(final PyObject stepFrame) {
+		mBelowFrame = null;
+		mStepFrame = (stepFrame instanceof PyFrame) ? (PyFrame) stepFrame : null;
+	}
+
+	/**
+	 * Function called by Jython Edb object if this thread should suspend on the next line.
+	 */
+	public void requestSuspend() {
+		mSuspendRequested = true;
+	}
+
+	/**
+	 * Function called by Jython Edb object before suspending.
+	 *
+	 * Frames on the stack might have been entered without local trace function
+	 * while continuing. Stepping needs them to be traced once control returns.
+	 *
+	 * @param frame: frame thread suspends in.
+	 * @param botframe: bottom frame of debugged script (excluded).
+	 */
+	public void traceStack(final PyFrame frame, final PyObject botframe) {
+		for (PyFrame current = frame; (current != null) && (current != botframe); current = current.f_back) {
+			if (current.tracefunc == null)
+				current.tracefunc = this;
+		}
+	}
+
+	// ************************************************************
+	// TraceFunction
+	// ************************************************************
+
+	@Override
+	public TraceFunction traceCall(final PyFrame frame) {
+		if (mInCallback || Py.getThreadState().tracing)
+			return null;
+
+		if (isDelegating(frame)) {
+			mSuspendRequested = false;
+			return delegate(frame, PyCallEvent, Py.None);
+		}
+
+		long start = (mTracer.getMetrics() != null) ? System.nanoTime() : 0;
+
+		// Breakpoints changed, Edb has to update them before lines are checked
+		long version = mTracer.getBreakpointVersion();
+		if (version != mBreakpointVersion) {
+			mBreakpointVersion = version;
+			callEdb(mTracer.getPySyncBreakpoints());
+		}
+
+		TraceFunction result = (getLines(frame.f_code) == NO_STOP) ? null : this;
+		if (start != 0)
+			mTracer.getMetrics().traceCallback(PyCallEvent.toString(), System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public TraceFunction traceLine(final PyFrame frame, final int line) {
+		if (isDelegating(frame)) {
+			mSuspendRequested = false;
+			return delegate(frame, PyLineEvent, Py.None);
+		}
+
+		long start = (mTracer.getMetrics() != null) ? System.nanoTime() : 0;
+		long[] lines = getLines(frame.f_code);
+		if (start != 0)
+			mTracer.getMetrics().traceCallback(PyLineEvent.toString(), System.nanoTime() - start);
+
+		// Line has breakpoint, Edb checks condition and hit count
+		if (BreakpointTable.contains(lines, line))
+			return delegate(frame, PyLineEvent, Py.None);
+		return this;
+	}
+
+	@Override
+	public TraceFunction traceReturn(final PyFrame frame, final PyObject ret) {
+		if (isDelegating(frame))
+			return delegate(frame, PyReturnEvent, (ret == null) ? Py.None : ret);
+		return this;
+	}
+
+	@Override
+	public TraceFunction traceException(final PyFrame frame, final PyException exc) {
+		if (isDelegating(frame)) {
+			PyObject traceback = (exc.traceback == null) ? Py.None : exc.traceback;
+			return delegate(frame, PyExceptionEvent, new PyTuple(exc.type, exc.value, traceback));
+		}
+		return this;
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	private boolean isDelegating(final PyFrame frame) {
+		if (mSuspendRequested)
+			return true;
+		return mStepping && !isBelowStepFrame(frame);
+	}
+
+	/**
+	 * Helper method checking if frame was called (directly or indirectly) by the step frame.
+	 *
+	 * bdb never stops in such frames while stepping over or out, only at breakpoints.
+	 */
+	private boolean isBelowStepFrame(final PyFrame frame) {
+		PyFrame stepFrame = mStepFrame;
+		if (stepFrame == null)
+			return false;
+
+		for (PyFrame current = frame; current != null; current = current.f_back) {
+			if (current == stepFrame)
+				return current != frame;
+			if (current == mBelowFrame) {
+				mBelowFrame = frame;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method getting breakpoint lines for code object.
+	 *
+	 * @param code: code object of frame.
+	 * @return breakpoint line bitset of code's file or NO_STOP if code cannot stop.
+	 */
+	private long[] getLines(final PyBaseCode code) {
+		int generation = mTracer.getBreakpointTable().getGeneration();
+		if (generation != mCodeGeneration) {
+			mCodeLines.clear();
+			mCodeGeneration = generation;
+			mLastCode = null;
+		} else if (code == mLastCode) {
+			return mLastLines;
+		}
+
+		long[] lines = mCodeLines.get(code);
+		if (lines == null) {
+			lines = computeLines(code);
+			mCodeLines.put(code, lines);
+		}
+
+		mLastCode = code;
+		mLastLines = lines;
+		return lines;
+	}
+
+	/**
+	 * Helper method checking if code object could stop while continuing.
+	 *
+	 * This is the case if its file has a breakpoint at or after the first line
+	 * of the code object (same check as Edb._code_can_stop).
+	 */
+	private long[] computeLines(final PyBaseCode code) {
+		String canonic = mTracer.getCanonicFilename(code.co_filename);
+		if (canonic == null) {
+			canonic = callEdb(mTracer.getPyCanonic(), new PyString(code.co_filename)).toString().intern();
+			mTracer.putCanonicFilename(code.co_filename, canonic);
+		}
+
+		long[] lines = mTracer.getBreakpointTable().getLines(canonic);
+		if (BreakpointTable.getLastLine(lines) < code.co_firstlineno)
+			return NO_STOP;
+		return lines;
+	}
+
+	/**
+	 * Delegates event to Edb.trace_dispatch.
+	 *
+	 * @return this if Edb wants to trace the frame, null otherwise.
+	 */
+	private TraceFunction delegate(final PyFrame frame, final PyString event, final PyObject arg) {
+		try {
+			PyObject result = callEdb(mTracer.getPyDispatch(), frame, event, arg);
+			return (result == Py.None) ? null : this;
+		} catch (PyException e) {
+			// Same as for Python trace functions (e.g. BdbQuit): stop tracing this thread
+			frame.tracefunc = null;
+			Py.getThreadState().tracefunc = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Helper method calling Edb without tracing the call itself.
+	 */
+	private PyObject callEdb(final PyObject function, final PyObject... args) {
+		ThreadState state = Py.getThreadState();
+		mInCallback = true;
+		state.tracing = true;
+		try {
+			return function.__call__(args);
+		} finally {
+			state.tracing = false;
+			mInCallback = false;
+		}
+	}
+}
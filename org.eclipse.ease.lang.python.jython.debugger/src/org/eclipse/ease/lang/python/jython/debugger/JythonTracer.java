@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.python.core.Py;
+import org.python.core.PyObject;
+
+/**
+ * Shared state of all JythonTraceFunctions of a debug session.
+ *
+ * Edb installs a JythonTraceFunction per thread instead of its Python
+ * trace_dispatch. The trace functions handle everything that cannot stop
+ * in Java and only call Edb.trace_dispatch when a thread is stepping or
+ * reaches a line with a breakpoint.
+ *
+ * Breakpoint lines are read from the BreakpointTable Edb maintains.
+ *
+ * @author kloeschmartin
+ */
+public class JythonTracer {
+	private static final String PyTraceDispatch = "trace_dispatch";
+	private static final String PyCanonic = "canonic";
+	private static final String PySyncBreakpoints = "_sync_breakpoints";
+
+	private final PyObject mPyDispatch;
+	private final PyObject mPyCanonic;
+	private final PyObject mPySyncBreakpoints;
+
+	/**
+	 * Index to check breakpoint version, null if breakpoints only change via Edb.
+	 */
+	private final BreakpointIndex mBreakpointIndex;
+
+	/**
+	 * Metrics to report trace callback timing to, null if timing is disabled.
+	 */
+	private final JythonDebuggerMetrics mMetrics;
+
+	/**
+	 * Breakpoint lines shared with Edb.
+	 */
+	private final BreakpointTable mBreakpointTable;
+
+	/**
+	 * Cache of co_filename to canonical filename as calculated by bdb.Bdb.canonic.
+	 */
+	private final Map<String, String> mCanonicFilenames = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Constructor looks up all Edb methods that may be called while tracing.
+	 *
+	 * Has to be created after Edb's metrics have been set since trace_dispatch
+	 * might be replaced by a timed version.
+	 *
+	 * @param pyDebugger: Edb object to delegate to.
+	 * @param breakpointTable: breakpoint lines maintained by Edb.
+	 * @param breakpointIndex: index of all breakpoints (may be null).
+	 * @param metrics: metrics for trace timing (null to disable).
+	 */
+	public JythonTracer(final PyObject pyDebugger, final BreakpointTable breakpointTable, final BreakpointIndex breakpointIndex,
+			final JythonDebuggerMetrics metrics) {
+		mPyDispatch = pyDebugger.__getattr__(PyTraceDispatch);
+		mPyCanonic = pyDebugger.__getattr__(PyCanonic);
+		mPySyncBreakpoints = pyDebugger.__getattr__(PySyncBreakpoints);
+		mBreakpointTable = breakpointTable;
+		mBreakpointIndex = breakpointIndex;
+		mMetrics = metrics;
+	}
+
+	/**
+	 * Installs a new trace function for the calling thread (like sys.settrace).
+	 *
+	 * @param stepping: true if thread is currently stepping.
+	 * @return installed trace function.
+	 */
+	public JythonTraceFunction install(final boolean stepping) {
+		JythonTraceFunction traceFunction = new JythonTraceFunction(this, stepping);
+		Py.getThreadState().tracefunc = traceFunction;
+		return traceFunction;
+	}
+
+	/**
+	 * Removes trace function of the calling thread (like sys.settrace(None)).
+	 */
+	public void uninstall() {
+		Py.getThreadState().tracefunc = null;
+	}
+
+	// ************************************************************
+	// Methods used by JythonTraceFunction
+	// ************************************************************
+
+	BreakpointTable getBreakpointTable() {
+		return mBreakpointTable;
+	}
+
+	/**
+	 * @return cached canonical filename or null if not calculated yet.
+	 */
+	String getCanonicFilename(final String filename) {
+		return mCanonicFilenames.get(filename);
+	}
+
+	void putCanonicFilename(final String filename, final String canonicFilename) {
+		mCanonicFilenames.put(filename, canonicFilename);
+	}
+
+	long getBreakpointVersion() {
+		return (mBreakpointIndex == null) ? 0 : mBreakpointIndex.getVersion();
+	}
+
+	PyObject getPyDispatch() {
+		return mPyDispatch;
+	}
+
+	PyObject getPyCanonic() {
+		return mPyCanonic;
+	}
+
+	PyObject getPySyncBreakpoints() {
+		return mPySyncBreakpoints;
+	}
+
+	JythonDebuggerMetrics getMetrics() {
+		return mMetrics;
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.python.core.PyObject;
+
+/**
+ * Read-only Map view of a Jython frame's local variables.
+ *
+ * The locals are only converted to Java when the map is first accessed
+ * (i.e. when the frame is expanded in the Variables view), so suspending
+ * does not have to copy the locals of every frame on the stack. Once the
+ * thread resumed the map is marked stale and no longer reads the frame.
+ *
+ * Each variable is classified when converted, filters of the Variables
+ * view use the stored VariableKind instead of inspecting values.
+ *
+ * @author kloeschmartin
+ */
+public class LazyVariablesMap extends AbstractMap<String, Object> {
+	/**
+	 * Jython frame to read f_locals from. Reset once variables are materialized.
+	 */
+	private PyObject mFrame;
+
+	/**
+	 * Materialized variables, null until first access.
+	 */
+	private Map<String, Object> mVariables = null;
+
+	/**
+	 * Kind of each materialized variable.
+	 */
+	private final Map<String, VariableKind> mKinds = new HashMap<String, VariableKind>();
+
+	/**
+	 * All kinds occurring in mKinds.
+	 */
+	private final EnumSet<VariableKind> mPresentKinds = EnumSet.noneOf(VariableKind.class);
+
+	/**
+	 * Set once the thread of the frame resumed.
+	 */
+	private boolean mStale = false;
+
+	/**
+	 * Constructor only stores frame, no conversion done here.
+	 *
+	 * @param frame: Jython frame object whose locals should be displayed.
+	 */
+	public LazyVariablesMap(final PyObject frame) {
+		mFrame = frame;
+	}
+
+	/**
+	 * Helper method converting f_locals to Java map on first call.
+	 *
+	 * @return map of all local variables.
+	 */
+	protected synchronized Map<String, Object> getVariables() {
+		if (mVariables == null) {
+			mVariables = new HashMap<String, Object>();
+			if (mFrame != null) {
+				PyObject locals = mFrame.__getattr__("f_locals");
+				for (PyObject key : locals.invoke("keys").asIterable()) {
+					String name = key.toString();
+					Object value = PagedCollection.toJava(locals.__finditem__(key), this);
+					mVariables.put(name, value);
+
+					VariableKind kind = VariableKind.classify(value);
+					mKinds.put(name, kind);
+					mPresentKinds.add(kind);
+				}
+			}
+
+			JythonDebuggerMetrics.getDefault().localsMarshalled(mVariables.size());
+
+			// allow for garbage collection
+			mFrame = null;
+		}
+		return mVariables;
+	}
+
+	/**
+	 * Marks variables as stale once the thread of the frame resumed.
+	 *
+	 * Converting f_locals after resuming would show values of a later line
+	 * for this frame, so variables not materialized yet stay empty. The same
+	 * applies to children of collections not fetched yet.
+	 */
+	public synchronized void markStale() {
+		if (mVariables == null)
+			mVariables = Collections.emptyMap();
+
+		mFrame = null;
+		mStale = true;
+	}
+
+	/**
+	 * Checks if the thread of the frame resumed.
+	 *
+	 * @return true if values must no longer be read from Jython.
+	 */
+	public synchronized boolean isStale() {
+		return mStale;
+	}
+
+	/**
+	 * Getter method for kind of variable.
+	 *
+	 * @param name: name of variable.
+	 * @return kind of variable or null if there is no such variable.
+	 */
+	public synchronized VariableKind getKind(final String name) {
+		getVariables();
+		return mKinds.get(name);
+	}
+
+	/**
+	 * Checks if any variable is of given kind.
+	 *
+	 * Variables that were not materialized yet are not displayed, so false
+	 * is returned for them without converting.
+	 *
+	 * @param kind: kind to look for.
+	 * @return true if a materialized variable is of given kind.
+	 */
+	public synchronized boolean containsKind(final VariableKind kind) {
+		return mPresentKinds.contains(kind);
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		return getVariables().entrySet();
+	}
+
+	@Override
+	public Object get(final Object key) {
+		return getVariables().get(key);
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return getVariables().containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return getVariables().size();
+	}
+}
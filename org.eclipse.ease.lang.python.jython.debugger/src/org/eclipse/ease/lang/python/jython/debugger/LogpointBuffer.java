@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Bounded ring buffer for messages of logpoints.
+ *
+ * Edb appends messages from the traced threads without locking and
+ * without waiting for the UI. A flush job writes them to the engine's
+ * output in batches. If messages are produced faster than they are
+ * flushed, the oldest ones are overwritten and reported as dropped.
+ *
+ * @author kloeschmartin
+ */
+public class LogpointBuffer {
+	/**
+	 * System property for number of messages kept in buffer.
+	 */
+	public static final String CAPACITY_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.logpointCapacity";
+
+	private static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * Delay in ms after first message before buffer is flushed, so messages of hot loops are written in batches.
+	 */
+	private static final long FLUSH_DELAY = 100;
+
+	/**
+	 * Message of a logpoint with its sequence number.
+	 */
+	private static class Entry {
+		private final long mSequence;
+		private final String mThread;
+		private final String mFilename;
+		private final int mLinenumber;
+		private final String mMessage;
+
+		public Entry(final long sequence, final String filename, final int linenumber, final String message) {
+			mSequence = sequence;
+			mThread = Thread.currentThread().getName();
+			mFilename = filename;
+			mLinenumber = linenumber;
+			mMessage = message;
+		}
+	}
+
+	private final AtomicReferenceArray<Entry> mEntries;
+	private final int mMask;
+
+	/**
+	 * Sequence number of next message to be appended.
+	 */
+	private final AtomicLong mWrite = new AtomicLong(0);
+
+	/**
+	 * Sequence number of next message to be flushed. Only used by flush job.
+	 */
+	private long mRead = 0;
+
+	/**
+	 * Flag to signalize if flush job is scheduled or running.
+	 */
+	private final AtomicBoolean mScheduled = new AtomicBoolean(false);
+
+	private final PrintStream mOutput;
+
+	/**
+	 * Job writing buffered messages to output.
+	 */
+	private final Job mFlushJob = new Job("Jython logpoint output") {
+		@Override
+		protected IStatus run(final IProgressMonitor monitor) {
+			do {
+				mScheduled.set(false);
+				flush();
+			} while ((mRead < mWrite.get()) && mScheduled.compareAndSet(false, true));
+			return Status.OK_STATUS;
+		}
+	};
+
+	/**
+	 * Constructor creates buffer with capacity given by CAPACITY_PROPERTY.
+	 *
+	 * @param output: stream messages are written to (engine's output).
+	 */
+	public LogpointBuffer(final PrintStream output) {
+		this(output, Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+	}
+
+	/**
+	 * Constructor creates buffer.
+	 *
+	 * @param output: stream messages are written to (engine's output).
+	 * @param capacity: number of messages kept, rounded up to a power of two.
+	 */
+	public LogpointBuffer(final PrintStream output, final int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		mEntries = new AtomicReferenceArray<Entry>(size);
+		mMask = size - 1;
+		mOutput = output;
+		mFlushJob.setSystem(true);
+	}
+
+	/**
+	 * Function called by Jython Edb object when a logpoint was hit. Never blocks.
+	 *
+	 * @param filename: filename of frame the logpoint was hit in.
+	 * @param linenumber: line of logpoint.
+	 * @param message: evaluated log message.
+	 */
+	public void append(final String filename, final int linenumber, final String message) {
+		long sequence = mWrite.getAndIncrement();
+		mEntries.set((int) (sequence & mMask), new Entry(sequence, filename, linenumber, message));
+		if (mScheduled.compareAndSet(false, true))
+			mFlushJob.schedule(FLUSH_DELAY);
+	}
+
+	/**
+	 * Writes all buffered messages immediately.
+	 * Called once the script terminated.
+	 */
+	public void close() {
+		mFlushJob.cancel();
+		try {
+			mFlushJob.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * Writes all currently buffered messages as one batch.
+	 */
+	private synchronized void flush() {
+		long write = mWrite.get();
+		long dropped = 0;
+		if ((write - mRead) > mEntries.length()) {
+			dropped = write - mEntries.length() - mRead;
+			mRead = write - mEntries.length();
+		}
+
+		StringBuilder batch = new StringBuilder();
+		for (; mRead < write; mRead++) {
+			Entry entry = mEntries.get((int) (mRead & mMask));
+			if ((entry == null) || (entry.mSequence < mRead))
+				// appending thread has not stored its message yet
+				break;
+
+			if (entry.mSequence > mRead) {
+				// overwritten while flushing
+				dropped++;
+				continue;
+			}
+
+			batch.append('[').append(entry.mThread).append("] ").append(ScriptCache.getWorkspacePath(entry.mFilename)).append(':')
+					.append(entry.mLinenumber).append(": ").append(entry.mMessage).append('\n');
+		}
+
+		if (dropped > 0)
+			batch.insert(0, "[logpoints] " + dropped + " messages dropped\n");
+
+		if (batch.length() > 0) {
+			mOutput.print(batch);
+			mOutput.flush();
+		}
+	}
+}
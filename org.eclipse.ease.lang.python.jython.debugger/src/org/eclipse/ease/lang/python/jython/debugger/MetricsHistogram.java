@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with power-of-two buckets.
+ *
+ * Bucket i counts values in [2^(i-1), 2^i), bucket 0 counts values below 1.
+ * Percentiles are therefore only accurate up to a factor of 2, which is
+ * enough to tell microseconds from milliseconds.
+ *
+ * @author kloeschmartin
+ */
+public class MetricsHistogram {
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong mCount = new AtomicLong();
+	private final AtomicLong mSum = new AtomicLong();
+	private final AtomicLong mMax = new AtomicLong();
+
+	/**
+	 * Records a single value.
+	 *
+	 * @param value: value to be recorded, negative values are recorded as 0.
+	 */
+	public void record(final long value) {
+		long recorded = Math.max(value, 0);
+		mBuckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(recorded));
+		mCount.incrementAndGet();
+		mSum.addAndGet(recorded);
+
+		long max;
+		while (recorded > (max = mMax.get()) && !mMax.compareAndSet(max, recorded)) {
+			// retry
+		}
+	}
+
+	public long getCount() {
+		return mCount.get();
+	}
+
+	public long getSum() {
+		return mSum.get();
+	}
+
+	public long getMax() {
+		return mMax.get();
+	}
+
+	public double getMean() {
+		long count = mCount.get();
+		return (count == 0) ? 0 : (double) mSum.get() / count;
+	}
+
+	/**
+	 * Getter method for approximated percentile.
+	 *
+	 * @param percentile: percentile between 0 and 100.
+	 * @return upper bound of bucket containing percentile.
+	 */
+	public long getPercentile(final double percentile) {
+		long count = mCount.get();
+		if (count == 0)
+			return 0;
+
+		long threshold = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int index = 0; index < BUCKETS; index++) {
+			seen += mBuckets.get(index);
+			if (seen >= threshold)
+				return Math.min((index == 0) ? 0 : (1L << index) - 1, getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * Resets all recorded values.
+	 */
+	public void reset() {
+		for (int index = 0; index < BUCKETS; index++)
+			mBuckets.set(index, 0);
+		mCount.set(0);
+		mSum.set(0);
+		mMax.set(0);
+	}
+}
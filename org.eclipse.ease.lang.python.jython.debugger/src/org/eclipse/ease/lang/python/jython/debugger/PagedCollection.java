@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.python.core.PyBaseSet;
+import org.python.core.PyDictionary;
+import org.python.core.PyException;
+import org.python.core.PyList;
+import org.python.core.PyObject;
+import org.python.core.PyStringMap;
+import org.python.core.PyTuple;
+
+/**
+ * Read-only Map view of a range of a Python list, tuple, dict or set.
+ *
+ * Children are only fetched from the container when the node is expanded
+ * in the Variables view. Ranges with more elements than the page size are
+ * split into sub-ranges (like JDT's logical structure of arrays), so
+ * expanding a collection with millions of elements only ever converts a
+ * single page.
+ *
+ * Children are only fetched while the thread of the frame is suspended,
+ * once the frame's LazyVariablesMap is stale nodes not expanded before stay
+ * empty instead of reading the container of a running thread.
+ *
+ * @author kloeschmartin
+ */
+public class PagedCollection extends AbstractMap<String, Object> {
+	/**
+	 * System property for number of children shown per node.
+	 */
+	public static final String PAGE_SIZE_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.pageSize";
+
+	private static final int DEFAULT_PAGE_SIZE = 100;
+
+	private static final int PAGE_SIZE = Math.max(2, Integer.getInteger(PAGE_SIZE_PROPERTY, DEFAULT_PAGE_SIZE));
+
+	/**
+	 * Key of summary node of paged collections.
+	 */
+	private static final String LENGTH_KEY = "len()";
+
+	private final PyObject mContainer;
+
+	/**
+	 * Variables of frame this collection belongs to, used as lock and to check for staleness.
+	 */
+	private final LazyVariablesMap mOwner;
+
+	/**
+	 * Range of elements shown by this node [mFrom, mTo).
+	 */
+	private final int mFrom;
+	private final int mTo;
+
+	/**
+	 * Flag to signalize that this node is the collection itself, not a page of it.
+	 */
+	private final boolean mRoot;
+
+	/**
+	 * Fetched children, null until first access.
+	 */
+	private Map<String, Object> mChildren = null;
+
+	/**
+	 * Converts Python object to object shown in Variables view.
+	 *
+	 * Lists, tuples, dicts and sets are wrapped to be paged, all other
+	 * objects are converted as before.
+	 *
+	 * @param value: Python object (may be null).
+	 * @param owner: variables of frame value belongs to.
+	 * @return PagedCollection for collections, converted Java object otherwise.
+	 */
+	public static Object toJava(final PyObject value, final LazyVariablesMap owner) {
+		if (value == null)
+			return null;
+
+		if (isCollection(value))
+			return new PagedCollection(value, 0, value.__len__(), true, owner);
+		return value.__tojava__(Object.class);
+	}
+
+	/**
+	 * Constructor only stores necessary information, no children are fetched here.
+	 *
+	 * @param container: Python collection.
+	 * @param from: index of first element.
+	 * @param to: index after last element.
+	 * @param root: true if node represents the whole collection.
+	 * @param owner: variables of frame collection belongs to.
+	 */
+	private PagedCollection(final PyObject container, final int from, final int to, final boolean root, final LazyVariablesMap owner) {
+		mContainer = container;
+		mOwner = owner;
+		mFrom = from;
+		mTo = to;
+		mRoot = root;
+	}
+
+	/**
+	 * Getter method for wrapped collection.
+	 *
+	 * @return Python collection.
+	 */
+	public PyObject getContainer() {
+		return mContainer;
+	}
+
+	/**
+	 * Checks if the thread of the frame resumed.
+	 *
+	 * @return true if children not fetched yet will not be fetched anymore.
+	 */
+	public boolean isStale() {
+		return mOwner.isStale();
+	}
+
+	/**
+	 * Helper method fetching children on first call.
+	 *
+	 * Locks the owner so the thread cannot resume while children are fetched.
+	 *
+	 * @return map of all children of this node, empty if not fetched before the thread resumed.
+	 */
+	protected Map<String, Object> getChildren() {
+		synchronized (mOwner) {
+			if (mChildren == null) {
+				if (mOwner.isStale()) {
+					mChildren = Collections.emptyMap();
+					return mChildren;
+				}
+
+				mChildren = new LinkedHashMap<String, Object>();
+				int count = mTo - mFrom;
+				if (count > PAGE_SIZE) {
+					if (mRoot)
+						mChildren.put(LENGTH_KEY, Integer.valueOf(count));
+					addPages();
+
+				} else {
+					try {
+						addElements();
+					} catch (PyException e) {
+						// collection changed by another thread that is not suspended, show what we got so far
+					}
+				}
+			}
+			return mChildren;
+		}
+	}
+
+	/**
+	 * Helper method splitting range into at most PAGE_SIZE sub-ranges.
+	 */
+	private void addPages() {
+		long count = mTo - mFrom;
+		long chunk = PAGE_SIZE;
+		while (((count + chunk) - 1) / chunk > PAGE_SIZE)
+			chunk *= PAGE_SIZE;
+
+		for (long start = mFrom; start < mTo; start += chunk) {
+			int end = (int) Math.min(mTo, start + chunk);
+			mChildren.put("[" + start + ".." + (end - 1) + "]", new PagedCollection(mContainer, (int) start, end, false, mOwner));
+		}
+	}
+
+	/**
+	 * Helper method converting elements of range.
+	 *
+	 * Dicts and sets cannot be indexed, so their iterator is advanced to the
+	 * start of the range without converting skipped elements. Dict entries
+	 * are named by index and key, distinct keys may have equal reprs.
+	 */
+	private void addElements() {
+		if ((mContainer instanceof PyList) || (mContainer instanceof PyTuple)) {
+			for (int index = mFrom; index < mTo; index++) {
+				PyObject element = mContainer.__finditem__(index);
+				if (element == null)
+					break;
+				mChildren.put("[" + index + "]", toJava(element, mOwner));
+			}
+			return;
+		}
+
+		boolean isDict = !(mContainer instanceof PyBaseSet);
+		PyObject iterator = mContainer.__iter__();
+		for (int index = 0; index < mTo; index++) {
+			PyObject element = iterator.__iternext__();
+			if (element == null)
+				break;
+			if (index < mFrom)
+				continue;
+
+			if (isDict)
+				mChildren.put("[" + index + "] " + element.__repr__().toString(), toJava(mContainer.__finditem__(element), mOwner));
+			else
+				mChildren.put("[" + index + "]", toJava(element, mOwner));
+		}
+	}
+
+	/**
+	 * Helper method checking if object should be shown paged.
+	 */
+	private static boolean isCollection(final PyObject value) {
+		return (value instanceof PyList) || (value instanceof PyTuple) || (value instanceof PyDictionary) || (value instanceof PyStringMap)
+				|| (value instanceof PyBaseSet);
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		return getChildren().entrySet();
+	}
+
+	@Override
+	public Object get(final Object key) {
+		return getChildren().get(key);
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return getChildren().containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return getChildren().size();
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		// identity only, AbstractMap would fetch all children
+		return this == other;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	@Override
+	public String toString() {
+		if (mRoot)
+			return mContainer.getType().fastGetName() + " (len=" + (mTo - mFrom) + ")";
+		return "[" + mFrom + ".." + (mTo - 1) + "]";
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.internal.resources.Workspace;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.ease.Script;
+
+/**
+ * Bounded cache mapping absolute filenames to workspace paths and Script objects.
+ *
+ * Used by JythonDebugFrame so stepping through deep stacks does not
+ * relativize every filename and create new resources and Scripts on every suspend.
+ *
+ * @author kloeschmartin
+ */
+public class ScriptCache {
+	/**
+	 * Maximum number of files kept in cache.
+	 */
+	private static final int MAX_ENTRIES = 256;
+
+	/**
+	 * Least recently used map of cached entries.
+	 */
+	private static final Map<String, Entry> ENTRIES = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Cached information for a single file.
+	 */
+	private static class Entry {
+		private final String mWorkspacePath;
+		private final Script mScript;
+
+		public Entry(final String workspacePath) {
+			mWorkspacePath = workspacePath;
+			mScript = new Script(new JythonFile(workspacePath));
+		}
+	}
+
+	/**
+	 * Overrides File class to have accessible constructor.
+	 * @author kloeschmartin
+	 */
+	private static class JythonFile extends org.eclipse.core.internal.resources.File {
+		/**
+		 * Public constructor only calls protected superclass constructor.
+		 * @param fn
+		 */
+		public JythonFile(String fn) {
+			super(new Path(fn), (Workspace) ResourcesPlugin.getWorkspace());
+		}
+	}
+
+	private ScriptCache() {
+	}
+
+	/**
+	 * Helper method to get (or create) cached entry for filename.
+	 *
+	 * @param filename: absolute filename as used in Jython.
+	 * @return cached entry for filename.
+	 */
+	private static synchronized Entry getEntry(final String filename) {
+		Entry entry = ENTRIES.get(filename);
+		if (entry == null) {
+			entry = new Entry(toWorkspacePath(filename));
+			ENTRIES.put(filename, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Converts absolute filename to path in workspace.
+	 *
+	 * Since edb.py can only handle absolute filepaths it is necessary to
+	 * convert location to path in workspace.
+	 *
+	 * @param filename: absolute filename as used in Jython.
+	 * @return workspace path of file.
+	 */
+	public static String toWorkspacePath(final String filename) {
+		return "/" + ResourcesPlugin.getWorkspace().getRoot().getLocation().toFile().toURI().relativize(new File(filename).toURI()).getPath();
+	}
+
+	/**
+	 * Getter method for cached workspace path of given file.
+	 *
+	 * @param filename: absolute filename as used in Jython.
+	 * @return workspace path of file.
+	 */
+	public static String getWorkspacePath(final String filename) {
+		return getEntry(filename).mWorkspacePath;
+	}
+
+	/**
+	 * Getter method for cached Script of given file.
+	 *
+	 * @param filename: absolute filename as used in Jython.
+	 * @return Script object that stays the same as long as it is cached.
+	 */
+	public static Script getScript(final String filename) {
+		return getEntry(filename).mScript;
+	}
+
+	/**
+	 * Removes cached entries of a resource that was added, removed or moved.
+	 *
+	 * Entries of all files inside the resource are removed as well, so
+	 * evicting a folder or project drops everything cached below it.
+	 *
+	 * @param workspacePath: full path of resource in workspace.
+	 */
+	public static synchronized void evict(final String workspacePath) {
+		final String folderPrefix = workspacePath.endsWith("/") ? workspacePath : workspacePath + "/";
+		Iterator<Entry> iterator = ENTRIES.values().iterator();
+		while (iterator.hasNext()) {
+			String cached = iterator.next().mWorkspacePath;
+			if (cached.equals(workspacePath) || cached.startsWith(folderPrefix))
+				iterator.remove();
+		}
+	}
+
+	/**
+	 * Removes all cached entries.
+	 */
+	public static synchronized void clear() {
+		ENTRIES.clear();
+	}
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import org.python.core.Py;
+import org.python.core.PyException;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.PyTraceback;
+import org.python.core.PyTuple;
+import org.python.core.ThreadState;
+import org.python.core.TraceFunction;
+
+/**
+ * Python trace function forwarding the events of a single frame to a Java TraceFunction.
+ *
+ * threading installs the trace function of new threads with sys.settrace right
+ * before calling the thread's run method, so the first frame of every thread is
+ * traced through a Python trace function. A bootstrap trace function installing
+ * a Java TraceFunction for the thread returns an adapter for that first frame,
+ * all further frames are traced by the Java TraceFunction directly.
+ *
+ * @author kloeschmartin
+ */
+public class TraceFunctionAdapter extends PyObject {
+	private static final long serialVersionUID = 1L;
+
+	private static final String PyLineEvent = "line";
+	private static final String PyReturnEvent = "return";
+	private static final String PyExceptionEvent = "exception";
+
+	private final TraceFunction mFunction;
+
+	/**
+	 * Forwards the call event a Python trace function received to a Java TraceFunction.
+	 *
+	 * @param function: trace function of the calling thread.
+	 * @param args: arguments of Python trace function (frame, event, arg).
+	 * @return local Python trace function for frame, None if frame is not traced.
+	 */
+	public static PyObject traceCall(final TraceFunction function, final PyObject[] args) {
+		if ((args.length < 1) || !(args[0] instanceof PyFrame))
+			return Py.None;
+
+		ThreadState state = Py.getThreadState();
+		boolean tracing = state.tracing;
+		state.tracing = false;
+		try {
+			return wrap(function.traceCall((PyFrame) args[0]), null);
+		} finally {
+			state.tracing = tracing;
+		}
+	}
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param function: local trace function events are forwarded to.
+	 */
+	private TraceFunctionAdapter(final TraceFunction function) {
+		mFunction = function;
+	}
+
+	@Override
+	public PyObject __call__(final PyObject[] args, final String[] keywords) {
+		if ((args.length < 2) || !(args[0] instanceof PyFrame))
+			return Py.None;
+
+		PyFrame frame = (PyFrame) args[0];
+		String event = args[1].toString();
+		PyObject arg = (args.length > 2) ? args[2] : Py.None;
+
+		// Java trace functions are called by Jython while not tracing, Python ones while tracing
+		ThreadState state = Py.getThreadState();
+		boolean tracing = state.tracing;
+		state.tracing = false;
+		try {
+			if (PyLineEvent.equals(event))
+				return wrap(mFunction.traceLine(frame, frame.f_lineno), this);
+			else if (PyReturnEvent.equals(event))
+				return wrap(mFunction.traceReturn(frame, arg), this);
+			else if (PyExceptionEvent.equals(event))
+				return wrap(mFunction.traceException(frame, toException(arg)), this);
+			return this;
+		} finally {
+			state.tracing = tracing;
+		}
+	}
+
+	/**
+	 * Helper method converting a returned TraceFunction to a Python trace function.
+	 */
+	private static PyObject wrap(final TraceFunction function, final TraceFunctionAdapter current) {
+		if (function == null)
+			return Py.None;
+		if ((current != null) && (function == current.mFunction))
+			return current;
+		return new TraceFunctionAdapter(function);
+	}
+
+	/**
+	 * Helper method converting the (type, value, traceback) tuple of an exception event.
+	 */
+	private static PyException toException(final PyObject arg) {
+		if ((arg instanceof PyTuple) && (((PyTuple) arg).size() == 3)) {
+			PyTuple info = (PyTuple) arg;
+			PyObject traceback = info.__getitem__(2);
+			return new PyException(info.__getitem__(0), info.__getitem__(1), (traceback instanceof PyTraceback) ? (PyTraceback) traceback : null);
+		}
+		return new PyException(arg);
+	}
+}
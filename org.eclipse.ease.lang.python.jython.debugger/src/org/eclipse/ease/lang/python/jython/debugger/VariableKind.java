@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger;
+
+import org.eclipse.ease.modules.AbstractScriptModule;
+import org.python.core.PyBuiltinCallable;
+import org.python.core.PyClass;
+import org.python.core.PyFunction;
+import org.python.core.PyMethod;
+import org.python.core.PyModule;
+import org.python.core.PyReflectedFunction;
+import org.python.core.PyType;
+
+/**
+ * Classification of variable values used by the Variables view filters.
+ *
+ * Variables are classified once when their frame's locals are converted,
+ * so filters do not have to inspect values on every refresh.
+ *
+ * @author kloeschmartin
+ */
+public enum VariableKind {
+	FUNCTION, MODULE, CLASS, DATA;
+
+	/**
+	 * Classifies converted value of a variable.
+	 *
+	 * @param value: value as stored in the frame's variables.
+	 * @return kind of value.
+	 */
+	public static VariableKind classify(final Object value) {
+		if ((value instanceof PyFunction) || (value instanceof PyMethod) || (value instanceof PyBuiltinCallable)
+				|| (value instanceof PyReflectedFunction))
+			return FUNCTION;
+		if ((value instanceof PyModule) || (value instanceof AbstractScriptModule))
+			return MODULE;
+		if ((value instanceof PyType) || (value instanceof PyClass))
+			return CLASS;
+		return DATA;
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.actions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.jface.dialogs.IInputValidator;
+import org.eclipse.jface.dialogs.InputDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+import org.python.pydev.debug.model.PyBreakpoint;
+
+/**
+ * Abstract context menu action editing a marker attribute of the selected PyDev breakpoints.
+ *
+ * PyBreakpoint has no properties for the additional breakpoint settings of
+ * the Jython debugger, so they are stored as attributes of the breakpoint
+ * marker. Changing the attribute notifies the debug targets, which resync
+ * the breakpoint (see BreakpointInfo).
+ *
+ * @author kloeschmartin
+ */
+public abstract class BreakpointAttributeAction implements IObjectActionDelegate {
+	private final List<PyBreakpoint> mBreakpoints = new ArrayList<PyBreakpoint>();
+	private Shell mShell = null;
+
+	@Override
+	public void setActivePart(final IAction action, final IWorkbenchPart targetPart) {
+		mShell = targetPart.getSite().getShell();
+	}
+
+	@Override
+	public void run(final IAction action) {
+		if (mBreakpoints.isEmpty())
+			return;
+
+		// show current value if all selected breakpoints share it
+		String current = getValue(mBreakpoints.get(0).getMarker());
+		for (PyBreakpoint breakpoint : mBreakpoints) {
+			if (!current.equals(getValue(breakpoint.getMarker())))
+				current = "";
+		}
+
+		InputDialog dialog = new InputDialog(mShell, action.getText().replace("...", ""), getMessage(), current, getValidator());
+		if (dialog.open() != Window.OK)
+			return;
+
+		for (PyBreakpoint breakpoint : mBreakpoints) {
+			try {
+				setValue(breakpoint.getMarker(), dialog.getValue().trim());
+			} catch (CoreException e) {
+				ErrorDialog.openError(mShell, action.getText().replace("...", ""), "Could not update breakpoint", e.getStatus());
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void selectionChanged(final IAction action, final ISelection selection) {
+		mBreakpoints.clear();
+		if (selection instanceof IStructuredSelection) {
+			for (Object element : ((IStructuredSelection) selection).toList()) {
+				if (element instanceof PyBreakpoint)
+					mBreakpoints.add((PyBreakpoint) element);
+			}
+		}
+		action.setEnabled(!mBreakpoints.isEmpty());
+	}
+
+	/**
+	 * Getter method for text shown in input dialog.
+	 *
+	 * @return description of edited value.
+	 */
+	protected abstract String getMessage();
+
+	/**
+	 * Getter method for validator of entered value.
+	 *
+	 * @return validator or null if every value is accepted.
+	 */
+	protected abstract IInputValidator getValidator();
+
+	/**
+	 * Reads current value from breakpoint marker.
+	 *
+	 * @param marker: marker of breakpoint.
+	 * @return current value, empty string if not set.
+	 */
+	protected abstract String getValue(IMarker marker);
+
+	/**
+	 * Stores entered value in breakpoint marker.
+	 *
+	 * @param marker: marker of breakpoint.
+	 * @param value: trimmed value accepted by validator, empty string to reset.
+	 * @throws CoreException if marker cannot be modified.
+	 */
+	protected abstract void setValue(IMarker marker, String value) throws CoreException;
+}
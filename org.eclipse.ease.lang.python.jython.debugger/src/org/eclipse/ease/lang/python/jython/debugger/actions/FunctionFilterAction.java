@@ -10,8 +10,7 @@
  *******************************************************************************/
 package org.eclipse.ease.lang.python.jython.debugger.actions;
 
-import org.eclipse.ease.debugging.ScriptDebugVariable;
-import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.ease.lang.python.jython.debugger.VariableKind;
 
 public class FunctionFilterAction extends ViewFilterAction {
 
@@ -28,15 +27,11 @@ public class FunctionFilterAction extends ViewFilterAction {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see org.eclipse.jface.viewers.ViewerFilter#select(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+	 * @see org.eclipse.ease.lang.python.jython.debugger.actions.ViewFilterAction#getFilteredKind()
 	 */
 	@Override
-	public boolean select(final Viewer viewer, final Object parentElement, final Object element) {
-		if(element instanceof ScriptDebugVariable) {
-			return getValue();
-		}
-
-		return true;
+	protected VariableKind getFilteredKind() {
+		return VariableKind.FUNCTION;
 	}
 
 }
@@ -10,10 +10,7 @@
  *******************************************************************************/
 package org.eclipse.ease.lang.python.jython.debugger.actions;
 
-import org.eclipse.debug.core.DebugException;
-import org.eclipse.ease.debugging.ScriptDebugVariable;
-import org.eclipse.ease.modules.AbstractScriptModule;
-import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.ease.lang.python.jython.debugger.VariableKind;
 
 public class ModuleFilterAction extends ViewFilterAction {
 
@@ -30,20 +27,11 @@ public class ModuleFilterAction extends ViewFilterAction {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see org.eclipse.jface.viewers.ViewerFilter#select(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+	 * @see org.eclipse.ease.lang.python.jython.debugger.actions.ViewFilterAction#getFilteredKind()
 	 */
 	@Override
-	public boolean select(final Viewer viewer, final Object parentElement, final Object element) {
-		if(element instanceof ScriptDebugVariable) {
-			try {
-				Object value = ((ScriptDebugVariable)element).getValue().getValue();
-				if(value instanceof AbstractScriptModule)
-					return getValue();
-			} catch (DebugException e) {
-			}
-		}
-
-		return true;
+	protected VariableKind getFilteredKind() {
+		return VariableKind.MODULE;
 	}
 
 }
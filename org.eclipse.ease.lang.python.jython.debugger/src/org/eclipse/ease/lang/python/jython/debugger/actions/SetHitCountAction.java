@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.actions;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.ease.lang.python.jython.debugger.BreakpointInfo;
+import org.eclipse.jface.dialogs.IInputValidator;
+
+/**
+ * Action setting {@link BreakpointInfo#HIT_COUNT} of PyDev breakpoints.
+ *
+ * @author kloeschmartin
+ */
+public class SetHitCountAction extends BreakpointAttributeAction {
+	private static final String INVALID_HIT_COUNT = "Hit count must be a positive number";
+
+	@Override
+	protected String getMessage() {
+		return "Suspend starting with hit (empty to suspend on every hit):";
+	}
+
+	@Override
+	protected IInputValidator getValidator() {
+		return new IInputValidator() {
+			@Override
+			public String isValid(final String newText) {
+				String text = newText.trim();
+				if (text.isEmpty())
+					return null;
+				try {
+					return (Integer.parseInt(text) > 0) ? null : INVALID_HIT_COUNT;
+				} catch (NumberFormatException e) {
+					return INVALID_HIT_COUNT;
+				}
+			}
+		};
+	}
+
+	@Override
+	protected String getValue(final IMarker marker) {
+		int hitCount = marker.getAttribute(BreakpointInfo.HIT_COUNT, 0);
+		return (hitCount > 0) ? Integer.toString(hitCount) : "";
+	}
+
+	@Override
+	protected void setValue(final IMarker marker, final String value) throws CoreException {
+		marker.setAttribute(BreakpointInfo.HIT_COUNT, value.isEmpty() ? 0 : Integer.parseInt(value));
+	}
+}
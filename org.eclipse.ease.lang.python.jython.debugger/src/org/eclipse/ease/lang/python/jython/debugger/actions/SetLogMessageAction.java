@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.actions;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.ease.lang.python.jython.debugger.BreakpointInfo;
+import org.eclipse.jface.dialogs.IInputValidator;
+
+/**
+ * Action turning PyDev breakpoints into logpoints by setting {@link BreakpointInfo#LOG_MESSAGE}.
+ *
+ * @author kloeschmartin
+ */
+public class SetLogMessageAction extends BreakpointAttributeAction {
+
+	@Override
+	protected String getMessage() {
+		return "Python expression to log instead of suspending (empty for a normal breakpoint):";
+	}
+
+	@Override
+	protected IInputValidator getValidator() {
+		// expression is compiled by Edb, invalid expressions are logged as text
+		return null;
+	}
+
+	@Override
+	protected String getValue(final IMarker marker) {
+		return marker.getAttribute(BreakpointInfo.LOG_MESSAGE, "");
+	}
+
+	@Override
+	protected void setValue(final IMarker marker, final String value) throws CoreException {
+		marker.setAttribute(BreakpointInfo.LOG_MESSAGE, value.isEmpty() ? null : value);
+	}
+}
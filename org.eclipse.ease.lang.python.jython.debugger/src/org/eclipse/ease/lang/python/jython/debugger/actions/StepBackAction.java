@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.actions;
+
+import org.eclipse.debug.core.model.IDebugElement;
+import org.eclipse.debug.core.model.IDebugTarget;
+import org.eclipse.ease.lang.python.jython.debugger.model.ReplayDebugTarget;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.ui.IViewActionDelegate;
+import org.eclipse.ui.IViewPart;
+
+/**
+ * Abstract Debug view action stepping backwards in a {@link ReplayDebugTarget}.
+ *
+ * Only enabled while an element of a running replay is selected.
+ *
+ * @author kloeschmartin
+ */
+public abstract class StepBackAction implements IViewActionDelegate {
+	private ReplayDebugTarget mTarget = null;
+
+	@Override
+	public void init(final IViewPart view) {
+	}
+
+	@Override
+	public void run(final IAction action) {
+		if (mTarget != null)
+			mTarget.stepBack(getStepType());
+	}
+
+	@Override
+	public void selectionChanged(final IAction action, final ISelection selection) {
+		mTarget = null;
+		if (selection instanceof IStructuredSelection) {
+			Object element = ((IStructuredSelection) selection).getFirstElement();
+			if (element instanceof IDebugElement) {
+				IDebugTarget target = ((IDebugElement) element).getDebugTarget();
+				if ((target instanceof ReplayDebugTarget) && !target.isTerminated())
+					mTarget = (ReplayDebugTarget) target;
+			}
+		}
+		action.setEnabled(mTarget != null);
+	}
+
+	/**
+	 * Getter method for step performed backwards.
+	 *
+	 * @return DebugEvent.STEP_INTO, STEP_OVER, STEP_RETURN or RESUME.
+	 */
+	protected abstract int getStepType();
+}
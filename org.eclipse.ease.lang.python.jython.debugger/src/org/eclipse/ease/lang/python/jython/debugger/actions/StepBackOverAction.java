@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.actions;
+
+import org.eclipse.debug.core.DebugEvent;
+
+public class StepBackOverAction extends StepBackAction {
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.ease.lang.python.jython.debugger.actions.StepBackAction#getStepType()
+	 */
+	@Override
+	protected int getStepType() {
+		return DebugEvent.STEP_OVER;
+	}
+
+}
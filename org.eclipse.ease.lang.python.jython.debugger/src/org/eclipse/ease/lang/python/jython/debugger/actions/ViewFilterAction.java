@@ -10,14 +10,24 @@
  *******************************************************************************/
 package org.eclipse.ease.lang.python.jython.debugger.actions;
 
+import java.util.Map;
+
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.model.IVariable;
 import org.eclipse.debug.ui.IDebugView;
 import org.eclipse.ease.Activator;
+import org.eclipse.ease.debugging.ScriptDebugStackFrame;
+import org.eclipse.ease.debugging.ScriptDebugVariable;
+import org.eclipse.ease.lang.python.jython.debugger.LazyVariablesMap;
+import org.eclipse.ease.lang.python.jython.debugger.VariableKind;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
+import org.eclipse.jface.viewers.AbstractTreeViewer;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TreePath;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerFilter;
 import org.eclipse.swt.widgets.Event;
@@ -28,6 +38,10 @@ import org.eclipse.ui.IViewPart;
 /**
  * Abstract action that can be used to update an {@link IDebugView}
  * 
+ * Hides variables of the {@link VariableKind} returned by {@link #getFilteredKind()}
+ * when unchecked. Kinds are looked up from the frame's {@link LazyVariablesMap}
+ * where they were stored when the variables were converted.
+ * 
  * @since 1.0
  */
 public abstract class ViewFilterAction extends ViewerFilter implements IViewActionDelegate, IActionDelegate2 {
@@ -120,14 +134,28 @@ public abstract class ViewFilterAction extends ViewerFilter implements IViewActi
         }
         if (filter == null) {
             viewer.addFilter(this);
-        } else {
+        } else if (isAffected(viewer.getInput()) && !refreshAffected(viewer)) {
             // only refresh is removing - adding will refresh automatically
-            viewer.refresh();
+            // filtering does not change labels, so they are not updated
+            viewer.refresh(false);
         }
         IPreferenceStore store = getPreferenceStore();
         store.setValue(getPreferenceKey(), action.isChecked());
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.eclipse.jface.viewers.ViewerFilter#select(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public boolean select(final Viewer viewer, final Object parentElement, final Object element) {
+        if ((element instanceof ScriptDebugVariable) && (getKind(viewer, parentElement, (ScriptDebugVariable) element) == getFilteredKind()))
+            return getValue();
+
+        return true;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -155,6 +183,111 @@ public abstract class ViewFilterAction extends ViewerFilter implements IViewActi
         return store.getBoolean(getPreferenceKey());
     }
 
+    /**
+     * Returns the kind of variables hidden by this filter
+     * 
+     * @return VariableKind
+     */
+    protected abstract VariableKind getFilteredKind();
+
+    /**
+     * Returns the kind of a variable. Variables of a frame use the kind stored on conversion, all others (e.g. children of
+     * collections) are classified by their value.
+     * 
+     * @param viewer
+     * @param parentElement
+     *            parent element or {@link TreePath}
+     * @param variable
+     * @return VariableKind
+     */
+    protected VariableKind getKind(final Viewer viewer, final Object parentElement, final ScriptDebugVariable variable) {
+        Object parent = parentElement;
+        if (parent instanceof TreePath)
+            parent = ((TreePath) parent).getLastSegment();
+        if (parent == null)
+            parent = viewer.getInput();
+
+        try {
+            LazyVariablesMap variables = getVariables(parent);
+            if (variables != null) {
+                VariableKind kind = variables.getKind(variable.getName());
+                if (kind != null)
+                    return kind;
+            }
+
+            return VariableKind.classify(variable.getValue().getValue());
+        } catch (DebugException e) {
+            return VariableKind.DATA;
+        }
+    }
+
+    /**
+     * Returns whether the element shown in the view contains variables hidden by this filter.
+     * 
+     * @param input
+     *            input of viewer
+     * @return true if a refresh is needed when the filter is toggled
+     */
+    protected boolean isAffected(final Object input) {
+        LazyVariablesMap variables = getVariables(input);
+        return (variables == null) || variables.containsKind(getFilteredKind());
+    }
+
+    /**
+     * Updates only the variables of the shown frame that are affected by this filter.
+     * 
+     * Variables of the filtered kind are removed from the tree when hidden and inserted at their position among the visible
+     * variables when shown. Other variables are only refreshed if expanded, as their children are classified by value.
+     * 
+     * @param viewer
+     *            viewer this filter is installed on
+     * @return false if the viewer has to be refreshed completely
+     */
+    protected boolean refreshAffected(final StructuredViewer viewer) {
+        Object input = viewer.getInput();
+        LazyVariablesMap variables = getVariables(input);
+        if (!(viewer instanceof AbstractTreeViewer) || (variables == null))
+            return false;
+
+        AbstractTreeViewer treeViewer = (AbstractTreeViewer) viewer;
+        try {
+            int position = 0;
+            for (IVariable element : ((ScriptDebugStackFrame) input).getVariables()) {
+                if (variables.getKind(element.getName()) == getFilteredKind()) {
+                    if (!getValue())
+                        treeViewer.remove(element);
+                    else if (isVisible(viewer, input, element))
+                        treeViewer.insert(input, element, position++);
+
+                } else if (isVisible(viewer, input, element)) {
+                    if (treeViewer.getExpandedState(element))
+                        treeViewer.refresh(element, false);
+                    position++;
+                }
+            }
+        } catch (DebugException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isVisible(final StructuredViewer viewer, final Object parentElement, final Object element) {
+        for (ViewerFilter filter : viewer.getFilters()) {
+            if (!filter.select(viewer, parentElement, element))
+                return false;
+        }
+        return true;
+    }
+
+    private static LazyVariablesMap getVariables(final Object element) {
+        if (element instanceof ScriptDebugStackFrame) {
+            Map<String, Object> variables = ((ScriptDebugStackFrame) element).getDebugFrame().getVariables();
+            if (variables instanceof LazyVariablesMap)
+                return (LazyVariablesMap) variables;
+        }
+        return null;
+    }
+
     /**
      * Returns the key for this action's preference
      * 
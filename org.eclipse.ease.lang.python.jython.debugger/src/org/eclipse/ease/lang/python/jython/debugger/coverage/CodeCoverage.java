@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.coverage;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Executed lines of a single code object on a single thread.
+ *
+ * Counts down the lines the code object can trace, once all of them have
+ * been seen the code object is complete and does not need to be traced
+ * any more.
+ *
+ * @author kloeschmartin
+ */
+class CodeCoverage {
+	/**
+	 * Workspace path of code object's file.
+	 */
+	private final String mPath;
+
+	private final int mFirstLine;
+
+	private final BitSet mLines = new BitSet();
+
+	/**
+	 * Sorted lines code object traces, null if unknown.
+	 */
+	private final int[] mExpected;
+
+	private int mRemaining;
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param path: workspace path of code object's file.
+	 * @param firstLine: first line of code object.
+	 * @param expected: sorted lines code object traces, null if unknown.
+	 */
+	CodeCoverage(final String path, final int firstLine, final int[] expected) {
+		mPath = path;
+		mFirstLine = firstLine;
+		mExpected = expected;
+		mRemaining = (expected == null) ? -1 : expected.length;
+	}
+
+	/**
+	 * Marks line as executed.
+	 *
+	 * @param line: line number of line event.
+	 * @return true if all lines of code object have been executed.
+	 */
+	boolean mark(final int line) {
+		if (mLines.get(line))
+			return false;
+
+		boolean expected = (mExpected != null) && (Arrays.binarySearch(mExpected, line) >= 0);
+		// Jython reports the first line on every call, for functions that is the def statement
+		if ((line == mFirstLine) && (mExpected != null) && !expected)
+			return false;
+
+		mLines.set(line);
+		if (expected)
+			mRemaining--;
+		return mRemaining == 0;
+	}
+
+	boolean isComplete() {
+		return mRemaining == 0;
+	}
+
+	String getPath() {
+		return mPath;
+	}
+
+	BitSet getLines() {
+		return mLines;
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.coverage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Executed lines per workspace file.
+ *
+ * Stored in a compact binary format that can be merged across runs:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    number of files
+ * per file:
+ *   UTF  workspace path
+ *   int  number of words
+ *   long words of line bitset (bit n set if line n executed)
+ * </pre>
+ *
+ * Merging is a bitwise or of the line bitsets of each file.
+ *
+ * @author kloeschmartin
+ */
+public class CoverageData {
+	/**
+	 * "PYCV"
+	 */
+	public static final int MAGIC = 0x50594356;
+	public static final int VERSION = 1;
+
+	private final Map<String, BitSet> mFiles = new TreeMap<String, BitSet>();
+
+	/**
+	 * Adds executed lines of a file.
+	 *
+	 * @param path: workspace path of file.
+	 * @param lines: executed lines.
+	 */
+	public void add(final String path, final BitSet lines) {
+		BitSet existing = mFiles.get(path);
+		if (existing == null) {
+			existing = new BitSet();
+			mFiles.put(path, existing);
+		}
+		existing.or(lines);
+	}
+
+	/**
+	 * Adds executed lines of all files of other coverage data.
+	 *
+	 * @param other: coverage data e.g. of a previous run.
+	 */
+	public void merge(final CoverageData other) {
+		for (Map.Entry<String, BitSet> entry : other.mFiles.entrySet())
+			add(entry.getKey(), entry.getValue());
+	}
+
+	public Set<String> getFiles() {
+		return Collections.unmodifiableSet(mFiles.keySet());
+	}
+
+	/**
+	 * Getter method for executed lines of file.
+	 *
+	 * @param path: workspace path of file.
+	 * @return copy of executed lines, empty if file was not executed.
+	 */
+	public BitSet getLines(final String path) {
+		BitSet lines = mFiles.get(path);
+		return (lines == null) ? new BitSet() : (BitSet) lines.clone();
+	}
+
+	/**
+	 * Getter method for total number of executed lines.
+	 *
+	 * @return number of executed lines of all files.
+	 */
+	public int getLineCount() {
+		int count = 0;
+		for (BitSet lines : mFiles.values())
+			count += lines.cardinality();
+		return count;
+	}
+
+	/**
+	 * Reads coverage data from file.
+	 *
+	 * @param file: file written by write.
+	 * @return coverage data of file.
+	 * @throws IOException if file cannot be read or has wrong format.
+	 */
+	public static CoverageData read(final File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (input.readInt() != MAGIC)
+				throw new IOException(file + " is no coverage file");
+			int version = input.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported coverage file version " + version + " in " + file);
+
+			CoverageData data = new CoverageData();
+			int files = input.readInt();
+			for (int index = 0; index < files; index++) {
+				String path = input.readUTF();
+				data.add(path, readLines(input));
+			}
+			return data;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Writes coverage data to file.
+	 *
+	 * @param file: file to write, replaced if it exists.
+	 * @throws IOException if file cannot be written.
+	 */
+	public void write(final File file) throws IOException {
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(mFiles.size());
+			for (Map.Entry<String, BitSet> entry : mFiles.entrySet()) {
+				output.writeUTF(entry.getKey());
+				writeLines(output, entry.getValue());
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Merges coverage data into file.
+	 *
+	 * If the file already exists its data is merged with this data first,
+	 * so consecutive runs accumulate their coverage.
+	 *
+	 * @param file: file to update.
+	 * @throws IOException if file cannot be read or written.
+	 */
+	public void mergeInto(final File file) throws IOException {
+		CoverageData merged = this;
+		if (file.isFile()) {
+			merged = read(file);
+			merged.merge(this);
+		}
+		merged.write(file);
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	private static BitSet readLines(final DataInputStream input) throws IOException {
+		BitSet lines = new BitSet();
+		int words = input.readInt();
+		for (int word = 0; word < words; word++) {
+			long value = input.readLong();
+			while (value != 0) {
+				int bit = Long.numberOfTrailingZeros(value);
+				lines.set(word * 64 + bit);
+				value &= value - 1;
+			}
+		}
+		return lines;
+	}
+
+	private static void writeLines(final DataOutputStream output, final BitSet lines) throws IOException {
+		// BitSet.toLongArray is not available before Java 7
+		long[] words = new long[(lines.length() + 63) / 64];
+		for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1))
+			words[line >> 6] |= 1L << line;
+
+		output.writeInt(words.length);
+		for (long word : words)
+			output.writeLong(word);
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.coverage;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyException;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.TraceFunction;
+
+/**
+ * Trace function of a single thread recording executed lines.
+ *
+ * Installed at the same hook as Edb's trace function but never suspends.
+ * Frames of code outside the workspace and of code objects whose lines
+ * have all been seen get no local trace function, a frame's local trace
+ * function is removed as soon as its code object is complete.
+ *
+ * @author kloeschmartin
+ */
+public class CoverageTraceFunction extends TraceFunction {
+	/**
+	 * Marker for code objects that are not recorded.
+	 */
+	private static final CodeCoverage NOT_COVERED = new CodeCoverage(null, 0, new int[0]);
+
+	private final CoverageTracer mTracer;
+
+	private final Map<PyBaseCode, CodeCoverage> mCoverage = new IdentityHashMap<PyBaseCode, CodeCoverage>();
+
+	/**
+	 * Last looked up code object, consecutive lines mostly belong to the same frame.
+	 */
+	private PyBaseCode mLastCode = null;
+	private CodeCoverage mLastCoverage = null;
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param tracer: shared tracer state.
+	 */
+	CoverageTraceFunction(final CoverageTracer tracer) {
+		mTracer = tracer;
+	}
+
+	/**
+	 * Getter method for recorded code objects.
+	 *
+	 * @return coverage per code object, only consistent once thread finished.
+	 */
+	Collection<CodeCoverage> getCoverage() {
+		return mCoverage.values();
+	}
+
+	// ************************************************************
+	// TraceFunction
+	// ************************************************************
+
+	@Override
+	public TraceFunction traceCall(final PyFrame frame) {
+		if (Py.getThreadState().tracing)
+			return null;
+
+		return getCoverage(frame.f_code).isComplete() ? null : this;
+	}
+
+	@Override
+	public TraceFunction traceLine(final PyFrame frame, final int line) {
+		CodeCoverage coverage = getCoverage(frame.f_code);
+		if (coverage.mark(line) || coverage.isComplete())
+			return null;
+		return this;
+	}
+
+	@Override
+	public TraceFunction traceReturn(final PyFrame frame, final PyObject ret) {
+		return null;
+	}
+
+	@Override
+	public TraceFunction traceException(final PyFrame frame, final PyException exc) {
+		return getCoverage(frame.f_code).isComplete() ? null : this;
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	private CodeCoverage getCoverage(final PyBaseCode code) {
+		if (code == mLastCode)
+			return mLastCoverage;
+
+		CodeCoverage coverage = mCoverage.get(code);
+		if (coverage == null) {
+			coverage = mTracer.createCoverage(code);
+			if (coverage == null)
+				coverage = NOT_COVERED;
+			mCoverage.put(code, coverage);
+		}
+
+		mLastCode = code;
+		mLastCoverage = coverage;
+		return coverage;
+	}
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.coverage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.ease.lang.python.jython.debugger.TraceFunctionAdapter;
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyException;
+import org.python.core.PyInteger;
+import org.python.core.PyList;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.core.ThreadState;
+import org.python.core.imp;
+
+/**
+ * Line coverage recorder for workspace Python files.
+ *
+ * Installs a CoverageTraceFunction as trace function of the script thread
+ * and (via threading.settrace) of all threads the script starts. Lines a code
+ * object can trace are taken from coverage_lines.py once per file, so code
+ * objects can stop being traced once all of their lines were executed.
+ *
+ * Requires the plugin's python directory on the interpreter's path.
+ *
+ * @author kloeschmartin
+ */
+public class CoverageTracer {
+	private static final String PyThreading = "threading";
+	private static final String PySetTrace = "settrace";
+	private static final String PyCoverageModule = "coverage_lines";
+	private static final String PyCodeLinesCmd = "code_lines";
+	private static final String PyModuleName = "<module>";
+	private static final String PyModuleKey = "<module>:0";
+
+	/**
+	 * Workspace file of a Python filename.
+	 */
+	private static class SourceFile {
+		private final String mPath;
+		private final String mLocation;
+
+		/**
+		 * Lines per code key as computed by coverage_lines.code_lines, null until first needed.
+		 */
+		private Map<String, int[]> mCodeLines = null;
+
+		private SourceFile(final String path, final String location) {
+			mPath = path;
+			mLocation = location;
+		}
+	}
+
+	/**
+	 * Marker for filenames outside the workspace.
+	 */
+	private static final SourceFile NO_FILE = new SourceFile(null, null);
+
+	private final IWorkspaceRoot mRoot = ResourcesPlugin.getWorkspace().getRoot();
+	private final String mRootLocation = mRoot.getLocation().toFile().getAbsolutePath() + File.separator;
+
+	private final Map<String, SourceFile> mFiles = new HashMap<String, SourceFile>();
+
+	/**
+	 * Trace functions of all traced threads.
+	 */
+	private final List<CoverageTraceFunction> mFunctions = new ArrayList<CoverageTraceFunction>();
+
+	private PyObject mCodeLines = null;
+	private PyObject mThreading = null;
+
+	/**
+	 * Trace function for threads started by the script.
+	 *
+	 * threading passes it to sys.settrace in the new thread, on the first
+	 * event it replaces itself with a CoverageTraceFunction.
+	 */
+	private class Bootstrap extends PyObject {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public PyObject __call__(final PyObject[] args, final String[] keywords) {
+			CoverageTraceFunction function = install();
+
+			// first event is the call of the thread's run method, its lines still reach this Python trace function
+			return TraceFunctionAdapter.traceCall(function, args);
+		}
+	}
+
+	/**
+	 * Starts recording. Has to be called by the thread about to run the script.
+	 */
+	public void start() {
+		mCodeLines = imp.importName(PyCoverageModule, true).__getattr__(PyCodeLinesCmd);
+		install();
+		mThreading = imp.importName(PyThreading, true);
+		mThreading.invoke(PySetTrace, new Bootstrap());
+	}
+
+	/**
+	 * Stops recording. Has to be called by the thread that started recording.
+	 *
+	 * Threads of the script still running keep their trace function,
+	 * their lines are only merged as far as recorded.
+	 */
+	public void stop() {
+		Py.getThreadState().tracefunc = null;
+		if (mThreading != null)
+			mThreading.invoke(PySetTrace, Py.None);
+	}
+
+	/**
+	 * Merges executed lines of all traced threads.
+	 *
+	 * @return executed lines per workspace file.
+	 */
+	public CoverageData getCoverage() {
+		CoverageData data = new CoverageData();
+		synchronized (mFunctions) {
+			for (CoverageTraceFunction function : mFunctions) {
+				try {
+					for (CodeCoverage coverage : function.getCoverage()) {
+						if (coverage.getPath() != null)
+							data.add(coverage.getPath(), coverage.getLines());
+					}
+				} catch (ConcurrentModificationException e) {
+					// thread still running, keep what was merged so far
+				}
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Creates coverage record of code object.
+	 *
+	 * @param code: code object about to be traced.
+	 * @return new coverage record, null if code is not located in workspace.
+	 */
+	CodeCoverage createCoverage(final PyBaseCode code) {
+		SourceFile file = getSourceFile(code.co_filename);
+		if (file == NO_FILE)
+			return null;
+
+		String key = PyModuleName.equals(code.co_name) ? PyModuleKey : code.co_name + ":" + code.co_firstlineno;
+		return new CodeCoverage(file.mPath, code.co_firstlineno, getCodeLines(file).get(key));
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	/**
+	 * Installs a new trace function for the calling thread.
+	 */
+	private CoverageTraceFunction install() {
+		CoverageTraceFunction function = new CoverageTraceFunction(this);
+		synchronized (mFunctions) {
+			mFunctions.add(function);
+		}
+		Py.getThreadState().tracefunc = function;
+		return function;
+	}
+
+	/**
+	 * Helper method mapping Jython filename to workspace file.
+	 *
+	 * Filenames are either absolute or (for scripts run by the engine) already workspace paths.
+	 */
+	private synchronized SourceFile getSourceFile(final String filename) {
+		SourceFile file = mFiles.get(filename);
+		if (file == null) {
+			file = NO_FILE;
+			if (filename == null) {
+				// no filename, e.g. dynamic code
+			} else if (filename.startsWith(mRootLocation)) {
+				file = new SourceFile("/" + filename.substring(mRootLocation.length()).replace(File.separatorChar, '/'), filename);
+			} else if (filename.startsWith("/")) {
+				IResource resource = mRoot.findMember(filename);
+				if ((resource instanceof IFile) && (resource.getLocation() != null))
+					file = new SourceFile(resource.getFullPath().toString(), resource.getLocation().toOSString());
+			}
+			mFiles.put(filename, file);
+		}
+		return file;
+	}
+
+	/**
+	 * Helper method getting lines per code object of file, parses file on first call.
+	 */
+	private Map<String, int[]> getCodeLines(final SourceFile file) {
+		synchronized (file) {
+			if (file.mCodeLines == null)
+				file.mCodeLines = parseCodeLines(file.mLocation);
+			return file.mCodeLines;
+		}
+	}
+
+	/**
+	 * Calls coverage_lines.code_lines without tracing the call itself.
+	 */
+	private Map<String, int[]> parseCodeLines(final String location) {
+		Map<String, int[]> codeLines = new HashMap<String, int[]>();
+		ThreadState state = Py.getThreadState();
+		boolean tracing = state.tracing;
+		state.tracing = true;
+		try {
+			PyObject result = mCodeLines.__call__(new PyString(location));
+			for (PyObject key : result.asIterable()) {
+				PyList lines = (PyList) result.__getitem__(key);
+				int[] values = new int[lines.size()];
+				for (int index = 0; index < values.length; index++)
+					values[index] = ((PyInteger) lines.pyget(index)).getValue();
+				codeLines.put(key.toString(), values);
+			}
+		} catch (PyException e) {
+			// lines unknown, code objects of file are traced until they finish
+		} finally {
+			state.tracing = tracing;
+		}
+		return codeLines;
+	}
+}
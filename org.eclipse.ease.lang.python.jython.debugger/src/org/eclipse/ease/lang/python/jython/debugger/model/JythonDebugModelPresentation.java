@@ -10,13 +10,27 @@
  *******************************************************************************/
 package org.eclipse.ease.lang.python.jython.debugger.model;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.debug.core.DebugPlugin;
+import org.eclipse.debug.core.IDebugEventSetListener;
 import org.eclipse.debug.core.model.IValue;
 import org.eclipse.debug.ui.IDebugModelPresentation;
 import org.eclipse.debug.ui.IValueDetailListener;
 import org.eclipse.ease.Script;
 import org.eclipse.ease.debugging.DynamicContentEditorInput;
 import org.eclipse.ease.debugging.ScriptDebugStackFrame;
+import org.eclipse.ease.debugging.ScriptDebugValue;
 import org.eclipse.jface.viewers.ILabelProviderListener;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.ui.IEditorDescriptor;
@@ -26,9 +40,42 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.editors.text.EditorsUI;
 import org.eclipse.ui.part.FileEditorInput;
 
-public class JythonDebugModelPresentation implements IDebugModelPresentation {
+public class JythonDebugModelPresentation implements IDebugModelPresentation, IDebugEventSetListener {
 	public static String ID = "org.python.pydev.debug";//"org.eclipse.ease.lang.python.jython.debugger.model.JythonDebugModelPresentation";
 	
+	/**
+	 * Editor inputs for file based Scripts. JythonDebugFrame reuses cached Scripts so
+	 * inputs do not need to be resolved again on every suspend.
+	 */
+	private final Map<Script, IEditorInput> mEditorInputs = Collections.synchronizedMap(new WeakHashMap<Script, IEditorInput>());
+
+	/**
+	 * System property for maximum number of characters rendered in detail pane.
+	 */
+	public static final String DETAIL_MAX_CHARS_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.detailMaxChars";
+
+	private static final int DEFAULT_DETAIL_MAX_CHARS = 10000;
+
+	private final int mDetailMaxChars = Math.max(1, Integer.getInteger(DETAIL_MAX_CHARS_PROPERTY, DEFAULT_DETAIL_MAX_CHARS));
+
+	/**
+	 * Rendered details of current suspend generation. Cleared on resume.
+	 */
+	private final Map<IValue, String> mDetails = new HashMap<IValue, String>();
+
+	/**
+	 * Incremented on every resume, details rendered for older generations are not cached.
+	 */
+	private int mGeneration = 0;
+
+	/**
+	 * Job rendering the most recently requested detail, null if none is running.
+	 */
+	private Job mDetailJob = null;
+
+	public JythonDebugModelPresentation() {
+		DebugPlugin.getDefault().addDebugEventListener(this);
+	}
 
 	@Override
 	public void setAttribute(final String attribute, final Object value) {
@@ -48,9 +95,74 @@ public class JythonDebugModelPresentation implements IDebugModelPresentation {
 
 	@Override
 	public void computeDetail(final IValue value, final IValueDetailListener listener) {
+		final int generation;
+		synchronized (mDetails) {
+			String detail = mDetails.get(value);
+			if(detail != null) {
+				listener.detailComputed(value, detail);
+				return;
+			}
+
+			// only the latest selection is of interest
+			if(mDetailJob != null)
+				mDetailJob.cancel();
+			generation = mGeneration;
+		}
+
+		Job job = new Job("Render Jython variable detail") {
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				String detail;
+				try {
+					detail = renderDetail(value, monitor);
+				} catch (OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				}
+
+				synchronized (mDetails) {
+					if(generation == mGeneration)
+						mDetails.put(value, detail);
+					if(mDetailJob == this)
+						mDetailJob = null;
+				}
+				listener.detailComputed(value, detail);
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+
+		synchronized (mDetails) {
+			mDetailJob = job;
+		}
+		job.schedule();
+	}
+
+	/**
+	 * Helper method rendering detail text of value, limited to mDetailMaxChars.
+	 */
+	private String renderDetail(final IValue value, final IProgressMonitor monitor) {
+		if(value instanceof ScriptDebugValue)
+			return ValueDetailRenderer.render(((ScriptDebugValue)value).getValue(), mDetailMaxChars, monitor);
+
 		Object adapter = value.getAdapter(String.class);
-		if(adapter instanceof String)
-			listener.detailComputed(value, (String)adapter);
+		return ValueDetailRenderer.render((adapter instanceof String) ? adapter : "", mDetailMaxChars, monitor);
+	}
+
+	@Override
+	public void handleDebugEvents(final DebugEvent[] events) {
+		for(DebugEvent event : events) {
+			if((event.getKind() == DebugEvent.RESUME) || (event.getKind() == DebugEvent.TERMINATE)) {
+				// values are only valid while suspended
+				synchronized (mDetails) {
+					mDetails.clear();
+					mGeneration++;
+					if(mDetailJob != null)
+						mDetailJob.cancel();
+					mDetailJob = null;
+				}
+				return;
+			}
+		}
 	}
 
 	@Override
@@ -62,8 +174,12 @@ public class JythonDebugModelPresentation implements IDebugModelPresentation {
 
 	@Override
 	public void dispose() {
-		// TODO Auto-generated method stub
-		System.out.println("Dispose of JythonDebugModelPresentation.");
+		DebugPlugin.getDefault().removeDebugEventListener(this);
+		synchronized (mDetails) {
+			mDetails.clear();
+			if(mDetailJob != null)
+				mDetailJob.cancel();
+		}
 
 	}
 
@@ -83,11 +199,19 @@ public class JythonDebugModelPresentation implements IDebugModelPresentation {
 	@Override
 	public IEditorInput getEditorInput(final Object element) {
 		if(element instanceof Script) {
+			IEditorInput input = mEditorInputs.get(element);
+			if(input != null)
+				return input;
+
 			final Object file = ((Script)element).getFile();
-			if(file instanceof IFile)
-				return new FileEditorInput((IFile)file);
+			if(file instanceof IFile) {
+				input = new FileEditorInput((IFile)file);
+				mEditorInputs.put((Script)element, input);
+				return input;
+			}
 
 			else
+				// not cached since input references script (would never be collected)
 				return new DynamicContentEditorInput((Script)element);
 		}
 		// TODO Auto-generated method stub
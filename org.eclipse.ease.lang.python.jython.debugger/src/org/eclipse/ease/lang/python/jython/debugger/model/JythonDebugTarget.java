@@ -18,6 +18,7 @@ import org.eclipse.debug.core.ILaunch;
 import org.eclipse.debug.core.model.IBreakpoint;
 import org.eclipse.ease.Script;
 import org.eclipse.ease.debugging.ScriptDebugTarget;
+import org.eclipse.ease.lang.python.jython.debugger.BreakpointIndex;
 
 /**
  * ScriptDebugTarget for communication between Eclipse framework and Jython debugger.
@@ -28,7 +29,12 @@ public class JythonDebugTarget extends ScriptDebugTarget {
 	private static final String pyBreakpointType = JythonDebugModelPresentation.ID;
 	
 	/**
-	 * Constructor for now only calls super constructor and 
+	 * Index of all enabled breakpoints, kept up to date by breakpoint listener methods.
+	 */
+	private final BreakpointIndex mBreakpointIndex;
+	
+	/**
+	 * Constructor calls super constructor, sets up breakpoint index and 
 	 * fires CreationEvent.
 	 * 
 	 * @param launch
@@ -36,6 +42,7 @@ public class JythonDebugTarget extends ScriptDebugTarget {
 	 */
 	public JythonDebugTarget(final ILaunch launch, final boolean suspendOnStartup) {
 		super(launch, suspendOnStartup);
+		mBreakpointIndex = new BreakpointIndex(DebugPlugin.getDefault().getBreakpointManager().getBreakpoints(pyBreakpointType));
 		fireCreationEvent();
 	}
 
@@ -59,17 +66,29 @@ public class JythonDebugTarget extends ScriptDebugTarget {
 		return DebugPlugin.getDefault().getBreakpointManager().getBreakpoints(pyBreakpointType);
 	}
 	
+	/**
+	 * Getter method for index of all enabled breakpoints.
+	 * 
+	 * @return BreakpointIndex kept up to date by this debug target.
+	 */
+	public BreakpointIndex getBreakpointIndex() {
+		return mBreakpointIndex;
+	}
+	
 	@Override
 	public void breakpointAdded(final IBreakpoint breakpoint) {
+		mBreakpointIndex.addBreakpoint(breakpoint);
 	}
 	
 
 	@Override
 	public void breakpointRemoved(final IBreakpoint breakpoint, final IMarkerDelta delta) {
+		mBreakpointIndex.removeBreakpoint(breakpoint);
 	}
 
 	@Override
 	public void breakpointChanged(final IBreakpoint breakpoint, final IMarkerDelta delta) {
+		mBreakpointIndex.updateBreakpoint(breakpoint);
 	}
 	
 	@Override
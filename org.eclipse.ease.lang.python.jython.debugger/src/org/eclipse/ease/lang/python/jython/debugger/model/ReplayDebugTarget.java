@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.model;
+
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.ease.lang.python.jython.debugger.recording.ReplayDebugger;
+
+/**
+ * JythonDebugTarget replaying a recorded execution.
+ *
+ * Behaves like a normal debug target, additionally steps can be made
+ * backwards through the recorded line history.
+ *
+ * @author kloeschmartin
+ */
+public class ReplayDebugTarget extends JythonDebugTarget {
+	private ReplayDebugger mReplayDebugger = null;
+
+	/**
+	 * Constructor creates target that suspends on the first recorded line.
+	 *
+	 * @param launch: launch of replay.
+	 */
+	public ReplayDebugTarget(final ILaunch launch) {
+		super(launch, true);
+	}
+
+	@Override
+	public String getName() throws DebugException {
+		return "EASE Jython Replay";
+	}
+
+	/**
+	 * Setter method for replay debugger.
+	 *
+	 * @param replayDebugger: debugger replaying the recording.
+	 */
+	public void setReplayDebugger(final ReplayDebugger replayDebugger) {
+		mReplayDebugger = replayDebugger;
+	}
+
+	/**
+	 * Steps backwards through recorded lines.
+	 *
+	 * @param type: DebugEvent.STEP_INTO, STEP_OVER, STEP_RETURN or RESUME.
+	 */
+	public void stepBack(final int type) {
+		if (mReplayDebugger != null)
+			mReplayDebugger.stepBack(type);
+	}
+}
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.model;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.ease.lang.python.jython.debugger.PagedCollection;
+import org.python.core.Py;
+import org.python.core.PyBaseSet;
+import org.python.core.PyBaseString;
+import org.python.core.PyDictionary;
+import org.python.core.PyList;
+import org.python.core.PyObject;
+import org.python.core.PyStringMap;
+import org.python.core.PyTuple;
+
+/**
+ * Renders detail text of a variable value with a character limit.
+ *
+ * Strings and collections are written piece by piece, so rendering stops
+ * as soon as the limit is reached instead of building the complete repr
+ * first. Other Python objects still use their repr, truncated afterwards.
+ *
+ * @author kloeschmartin
+ */
+class ValueDetailRenderer {
+	private static final String TRUNCATED = "...";
+
+	/**
+	 * Nesting level after which collections are not expanded any further.
+	 */
+	private static final int MAX_DEPTH = 32;
+
+	private final StringBuilder mBuffer = new StringBuilder();
+	private final int mMaxChars;
+	private final IProgressMonitor mMonitor;
+
+	/**
+	 * Renders value to string of at most maxChars characters (plus truncation marker).
+	 *
+	 * @param value: value object of variable.
+	 * @param maxChars: maximum number of characters to render.
+	 * @param monitor: monitor checked for cancellation.
+	 * @return rendered detail text.
+	 * @throws OperationCanceledException if monitor was canceled.
+	 */
+	static String render(final Object value, final int maxChars, final IProgressMonitor monitor) {
+		ValueDetailRenderer renderer = new ValueDetailRenderer(maxChars, monitor);
+		if (!renderer.write(value, 0))
+			renderer.mBuffer.append(TRUNCATED);
+		return renderer.mBuffer.toString();
+	}
+
+	private ValueDetailRenderer(final int maxChars, final IProgressMonitor monitor) {
+		mMaxChars = maxChars;
+		mMonitor = monitor;
+	}
+
+	/**
+	 * Writes value to buffer.
+	 *
+	 * @return false if limit was reached.
+	 */
+	private boolean write(final Object value, final int depth) {
+		if (value instanceof PagedCollection) {
+			// container must not be read once the thread resumed
+			PagedCollection collection = (PagedCollection) value;
+			if (collection.isStale())
+				return append(collection.toString());
+			return write(collection.getContainer(), depth);
+		}
+
+		if (value instanceof PyBaseString) {
+			// only the visible part has to be escaped
+			PyObject text = (PyObject) value;
+			if (text.__len__() > getRemaining())
+				text = text.__getslice__(Py.Zero, Py.newInteger(getRemaining()));
+			return append(text.__repr__().toString()) && (text == value);
+		}
+
+		if (value instanceof PyObject) {
+			PyObject object = (PyObject) value;
+			if (depth < MAX_DEPTH) {
+				if (object instanceof PyList)
+					return writeSequence(object, "[", "]", depth);
+				if (object instanceof PyTuple)
+					return writeSequence(object, "(", (object.__len__() == 1) ? ",)" : ")", depth);
+				if ((object instanceof PyDictionary) || (object instanceof PyStringMap))
+					return writeDict(object, depth);
+				if (object instanceof PyBaseSet)
+					return writeSequence(object, object.getType().fastGetName() + "([", "])", depth);
+			}
+			return append(object.__repr__().toString());
+		}
+
+		if (value instanceof CharSequence) {
+			CharSequence text = (CharSequence) value;
+			return append(text.subSequence(0, Math.min(text.length(), getRemaining() + 1)));
+		}
+
+		return append(String.valueOf(value));
+	}
+
+	private boolean writeSequence(final PyObject sequence, final String open, final String close, final int depth) {
+		if (!append(open))
+			return false;
+
+		boolean first = true;
+		for (PyObject element : sequence.asIterable()) {
+			if ((!first && !append(", ")) || !write(element, depth + 1))
+				return false;
+			first = false;
+		}
+		return append(close);
+	}
+
+	private boolean writeDict(final PyObject dict, final int depth) {
+		if (!append("{"))
+			return false;
+
+		boolean first = true;
+		for (PyObject key : dict.asIterable()) {
+			if ((!first && !append(", ")) || !write(key, depth + 1) || !append(": ") || !write(dict.__finditem__(key), depth + 1))
+				return false;
+			first = false;
+		}
+		return append("}");
+	}
+
+	private int getRemaining() {
+		return mMaxChars - mBuffer.length();
+	}
+
+	/**
+	 * Appends text to buffer up to the character limit.
+	 *
+	 * @return false if text did not fit completely.
+	 */
+	private boolean append(final CharSequence text) {
+		if (mMonitor.isCanceled())
+			throw new OperationCanceledException();
+
+		int remaining = getRemaining();
+		if (text.length() > remaining) {
+			mBuffer.append(text, 0, Math.max(remaining, 0));
+			return false;
+		}
+		mBuffer.append(text);
+		return true;
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.profiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.python.core.PyBaseCode;
+
+/**
+ * Node of a sampled call tree, one node per code object and call path.
+ *
+ * Children are keyed by code object identity, so adding a sample does not
+ * need to build any strings. Labels are only created on export.
+ *
+ * @author kloeschmartin
+ */
+public class CallTreeNode {
+	/**
+	 * Code object of node, null for root.
+	 */
+	private final PyBaseCode mCode;
+
+	private final Map<PyBaseCode, CallTreeNode> mChildren = new IdentityHashMap<PyBaseCode, CallTreeNode>();
+
+	/**
+	 * Number of samples in which this node was the innermost frame.
+	 */
+	private long mSelfSamples = 0;
+
+	/**
+	 * Number of samples in which this node was on the stack.
+	 */
+	private long mTotalSamples = 0;
+
+	/**
+	 * Constructor only stores code object.
+	 *
+	 * @param code: code object of frame, null for root node.
+	 */
+	public CallTreeNode(final PyBaseCode code) {
+		mCode = code;
+	}
+
+	/**
+	 * Getter method for child node of code object, creates it if needed.
+	 *
+	 * @param code: code object of called frame.
+	 * @return child node.
+	 */
+	public CallTreeNode getChild(final PyBaseCode code) {
+		CallTreeNode child = mChildren.get(code);
+		if (child == null) {
+			child = new CallTreeNode(code);
+			mChildren.put(code, child);
+		}
+		return child;
+	}
+
+	/**
+	 * Counts a sample passing through this node.
+	 *
+	 * @param innermost: true if node is the innermost frame of the sample.
+	 */
+	void addSample(final boolean innermost) {
+		mTotalSamples++;
+		if (innermost)
+			mSelfSamples++;
+	}
+
+	public Collection<CallTreeNode> getChildren() {
+		return mChildren.values();
+	}
+
+	public long getSelfSamples() {
+		return mSelfSamples;
+	}
+
+	public long getTotalSamples() {
+		return mTotalSamples;
+	}
+
+	/**
+	 * Getter method for label of node.
+	 *
+	 * @return "function (path:line)", empty string for root node.
+	 */
+	public String getLabel() {
+		if (mCode == null)
+			return "";
+
+		return (mCode.co_name + " (" + FunctionStats.getLocation(mCode) + ")").replace(';', ',');
+	}
+
+	/**
+	 * Writes tree in collapsed stack format as used by flame graph tools.
+	 *
+	 * Each line contains the semicolon separated frames from outermost to
+	 * innermost followed by the number of samples stopped in that frame.
+	 *
+	 * @param writer: writer to write lines to.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeCollapsed(final Writer writer) throws IOException {
+		StringBuilder prefix = new StringBuilder();
+		for (CallTreeNode child : getChildren())
+			child.writeCollapsed(writer, prefix);
+	}
+
+	private void writeCollapsed(final Writer writer, final StringBuilder prefix) throws IOException {
+		int length = prefix.length();
+		if (length > 0)
+			prefix.append(';');
+		prefix.append(getLabel());
+
+		if (mSelfSamples > 0)
+			writer.append(prefix).append(' ').append(Long.toString(mSelfSamples)).append('\n');
+		for (CallTreeNode child : getChildren())
+			child.writeCollapsed(writer, prefix);
+
+		prefix.setLength(length);
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.profiler;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.python.core.PyBaseCode;
+import org.python.core.PyException;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.TraceFunction;
+
+/**
+ * Profile function of a single thread (as installed by sys.setprofile).
+ *
+ * Profile functions only receive call and return events, lines are never
+ * traced. Counters are kept per code object in a map only this thread
+ * accesses, so no locking is needed.
+ *
+ * @author kloeschmartin
+ */
+public class FunctionProfileFunction extends TraceFunction {
+	private final Map<PyBaseCode, FunctionStats> mStats = new IdentityHashMap<PyBaseCode, FunctionStats>();
+
+	/**
+	 * Stack of active calls: frame, stats, start time and time spent in callees.
+	 */
+	private PyFrame[] mFrames = new PyFrame[64];
+	private FunctionStats[] mStackStats = new FunctionStats[64];
+	private long[] mStartTimes = new long[64];
+	private long[] mChildTimes = new long[64];
+	private int mDepth = 0;
+
+	/**
+	 * Getter method for collected counters.
+	 *
+	 * @return stats per code object, only consistent once thread finished.
+	 */
+	Map<PyBaseCode, FunctionStats> getStats() {
+		return mStats;
+	}
+
+	// ************************************************************
+	// TraceFunction
+	// ************************************************************
+
+	@Override
+	public TraceFunction traceCall(final PyFrame frame) {
+		FunctionStats stats = mStats.get(frame.f_code);
+		if (stats == null) {
+			stats = new FunctionStats(frame.f_code);
+			mStats.put(frame.f_code, stats);
+		}
+		stats.addCall();
+		stats.mActive++;
+
+		if (mDepth == mFrames.length)
+			grow();
+		mFrames[mDepth] = frame;
+		mStackStats[mDepth] = stats;
+		mChildTimes[mDepth] = 0;
+		mStartTimes[mDepth] = System.nanoTime();
+		mDepth++;
+
+		// no local trace function, profile functions never get line events
+		return null;
+	}
+
+	@Override
+	public TraceFunction traceReturn(final PyFrame frame, final PyObject ret) {
+		leave(frame, System.nanoTime());
+		return null;
+	}
+
+	@Override
+	public TraceFunction traceException(final PyFrame frame, final PyException exc) {
+		// exception leaves the frame
+		leave(frame, System.nanoTime());
+		return null;
+	}
+
+	@Override
+	public TraceFunction traceLine(final PyFrame frame, final int line) {
+		return null;
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	/**
+	 * Pops frame from stack and accounts its time.
+	 *
+	 * Frames above it (left without return event) are popped as well.
+	 * Frames not on the stack (entered before profiling started) are ignored.
+	 */
+	private void leave(final PyFrame frame, final long now) {
+		int index = mDepth - 1;
+		while ((index >= 0) && (mFrames[index] != frame))
+			index--;
+		if (index < 0)
+			return;
+
+		while (mDepth > index) {
+			mDepth--;
+			long elapsed = now - mStartTimes[mDepth];
+			FunctionStats stats = mStackStats[mDepth];
+			stats.mActive--;
+			stats.addTime(elapsed, elapsed - mChildTimes[mDepth]);
+			if (mDepth > 0)
+				mChildTimes[mDepth - 1] += elapsed;
+
+			mFrames[mDepth] = null;
+			mStackStats[mDepth] = null;
+		}
+	}
+
+	private void grow() {
+		int size = mFrames.length * 2;
+		mFrames = Arrays.copyOf(mFrames, size);
+		mStackStats = Arrays.copyOf(mStackStats, size);
+		mStartTimes = Arrays.copyOf(mStartTimes, size);
+		mChildTimes = Arrays.copyOf(mChildTimes, size);
+	}
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.profiler;
+
+import java.util.List;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+
+/**
+ * View showing the result of a FunctionProfiler run in a sortable table.
+ *
+ * Clicking a column header sorts by that column, clicking it again
+ * reverses the order.
+ *
+ * @author kloeschmartin
+ */
+public class FunctionProfileView extends ViewPart {
+	public static final String ID = "org.eclipse.ease.lang.python.jython.debugger.profiler.FunctionProfileView";
+
+	private static final int COLUMN_FUNCTION = 0;
+	private static final int COLUMN_LOCATION = 1;
+	private static final int COLUMN_CALLS = 2;
+	private static final int COLUMN_INCLUSIVE = 3;
+	private static final int COLUMN_EXCLUSIVE = 4;
+	private static final int COLUMN_PER_CALL = 5;
+
+	private TableViewer mViewer;
+
+	/**
+	 * Sorts FunctionStats by selected column.
+	 */
+	private static class StatsComparator extends ViewerComparator {
+		private int mColumn = COLUMN_EXCLUSIVE;
+		private boolean mDescending = true;
+
+		public void setColumn(final int column) {
+			if (column == mColumn) {
+				mDescending = !mDescending;
+			} else {
+				mColumn = column;
+				// numbers are most interesting largest first, names alphabetically
+				mDescending = (column >= COLUMN_CALLS);
+			}
+		}
+
+		public int getDirection() {
+			return mDescending ? SWT.DOWN : SWT.UP;
+		}
+
+		@Override
+		public int compare(final Viewer viewer, final Object first, final Object second) {
+			FunctionStats a = (FunctionStats) first;
+			FunctionStats b = (FunctionStats) second;
+			int result;
+			switch (mColumn) {
+			case COLUMN_FUNCTION:
+				result = a.getName().compareTo(b.getName());
+				break;
+			case COLUMN_LOCATION:
+				result = a.getLocation().compareTo(b.getLocation());
+				break;
+			case COLUMN_CALLS:
+				result = compare(a.getCalls(), b.getCalls());
+				break;
+			case COLUMN_INCLUSIVE:
+				result = compare(a.getInclusiveTime(), b.getInclusiveTime());
+				break;
+			case COLUMN_PER_CALL:
+				result = compare(getTimePerCall(a), getTimePerCall(b));
+				break;
+			default:
+				result = compare(a.getExclusiveTime(), b.getExclusiveTime());
+				break;
+			}
+			return mDescending ? -result : result;
+		}
+
+		private static int compare(final long a, final long b) {
+			return (a < b) ? -1 : ((a == b) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Shows profile in view. May be called from any thread.
+	 *
+	 * @param results: stats of all profiled functions.
+	 */
+	public static void showResults(final List<FunctionStats> results) {
+		PlatformUI.getWorkbench().getDisplay().asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				IWorkbenchWindow window = PlatformUI.getWorkbench().getActiveWorkbenchWindow();
+				if (window == null)
+					return;
+
+				try {
+					FunctionProfileView view = (FunctionProfileView) window.getActivePage().showView(ID, null, IWorkbenchPage.VIEW_VISIBLE);
+					view.setResults(results);
+				} catch (PartInitException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void createPartControl(final Composite parent) {
+		mViewer = new TableViewer(parent, SWT.FULL_SELECTION | SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL);
+		mViewer.setContentProvider(ArrayContentProvider.getInstance());
+		final StatsComparator comparator = new StatsComparator();
+		mViewer.setComparator(comparator);
+
+		Table table = mViewer.getTable();
+		table.setHeaderVisible(true);
+		table.setLinesVisible(true);
+
+		String[] titles = { "Function", "Location", "Calls", "Inclusive [ms]", "Exclusive [ms]", "Per call [us]" };
+		int[] widths = { 160, 280, 80, 100, 100, 100 };
+		for (int index = 0; index < titles.length; index++) {
+			final int column = index;
+			TableViewerColumn viewerColumn = new TableViewerColumn(mViewer, (column >= COLUMN_CALLS) ? SWT.RIGHT : SWT.LEFT);
+			viewerColumn.getColumn().setText(titles[column]);
+			viewerColumn.getColumn().setWidth(widths[column]);
+			viewerColumn.setLabelProvider(new ColumnLabelProvider() {
+				@Override
+				public String getText(final Object element) {
+					return getColumnText((FunctionStats) element, column);
+				}
+			});
+			viewerColumn.getColumn().addSelectionListener(new SelectionAdapter() {
+				@Override
+				public void widgetSelected(final SelectionEvent e) {
+					comparator.setColumn(column);
+					Table sortedTable = mViewer.getTable();
+					sortedTable.setSortColumn((TableColumn) e.widget);
+					sortedTable.setSortDirection(comparator.getDirection());
+					mViewer.refresh();
+				}
+			});
+		}
+		table.setSortColumn(table.getColumn(COLUMN_EXCLUSIVE));
+		table.setSortDirection(comparator.getDirection());
+	}
+
+	/**
+	 * Setter method for displayed profile.
+	 *
+	 * @param results: stats of all profiled functions.
+	 */
+	public void setResults(final List<FunctionStats> results) {
+		mViewer.setInput(results);
+	}
+
+	@Override
+	public void setFocus() {
+		mViewer.getControl().setFocus();
+	}
+
+	private static String getColumnText(final FunctionStats stats, final int column) {
+		switch (column) {
+		case COLUMN_FUNCTION:
+			return stats.getName();
+		case COLUMN_LOCATION:
+			return stats.getLocation();
+		case COLUMN_CALLS:
+			return Long.toString(stats.getCalls());
+		case COLUMN_INCLUSIVE:
+			return String.format("%.3f", stats.getInclusiveTime() / 1e6);
+		case COLUMN_EXCLUSIVE:
+			return String.format("%.3f", stats.getExclusiveTime() / 1e6);
+		case COLUMN_PER_CALL:
+			return String.format("%.3f", getTimePerCall(stats) / 1e3);
+		default:
+			return "";
+		}
+	}
+
+	/**
+	 * @return exclusive time per call in ns.
+	 */
+	private static long getTimePerCall(final FunctionStats stats) {
+		return (stats.getCalls() == 0) ? 0 : stats.getExclusiveTime() / stats.getCalls();
+	}
+}
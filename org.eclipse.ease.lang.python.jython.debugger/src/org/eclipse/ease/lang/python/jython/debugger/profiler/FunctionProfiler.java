@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.profiler;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.imp;
+
+/**
+ * Deterministic profiler counting calls and time of every Python function.
+ *
+ * Installs a FunctionProfileFunction as profile function of the script
+ * thread and (via threading.setprofile) of all threads the script starts.
+ * Only call and return events are handled, no line is ever traced.
+ *
+ * @author kloeschmartin
+ */
+public class FunctionProfiler {
+	private static final String PyThreading = "threading";
+	private static final String PySetProfile = "setprofile";
+
+	/**
+	 * Profile functions of all profiled threads.
+	 */
+	private final List<FunctionProfileFunction> mFunctions = new ArrayList<FunctionProfileFunction>();
+
+	private PyObject mThreading = null;
+
+	/**
+	 * Profile function for threads started by the script.
+	 *
+	 * threading passes it to sys.setprofile in the new thread, on the first
+	 * event it replaces itself with a FunctionProfileFunction.
+	 */
+	private class Bootstrap extends PyObject {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public PyObject __call__(final PyObject[] args, final String[] keywords) {
+			FunctionProfileFunction function = install();
+
+			// first event is the call of the thread's run method
+			if ((args.length > 0) && (args[0] instanceof PyFrame))
+				function.traceCall((PyFrame) args[0]);
+			return Py.None;
+		}
+	}
+
+	/**
+	 * Starts profiling. Has to be called by the thread about to run the script.
+	 */
+	public void start() {
+		install();
+		mThreading = imp.importName(PyThreading, true);
+		mThreading.invoke(PySetProfile, new Bootstrap());
+	}
+
+	/**
+	 * Stops profiling. Has to be called by the thread that started profiling.
+	 *
+	 * Threads of the script still running keep their profile function,
+	 * their counters are only merged as far as collected.
+	 */
+	public void stop() {
+		Py.getThreadState().profilefunc = null;
+		if (mThreading != null)
+			mThreading.invoke(PySetProfile, Py.None);
+	}
+
+	/**
+	 * Merges counters of all profiled threads.
+	 *
+	 * @return stats per function, unordered.
+	 */
+	public List<FunctionStats> getResults() {
+		Map<PyBaseCode, FunctionStats> merged = new IdentityHashMap<PyBaseCode, FunctionStats>();
+		synchronized (mFunctions) {
+			for (FunctionProfileFunction function : mFunctions) {
+				try {
+					for (Map.Entry<PyBaseCode, FunctionStats> entry : function.getStats().entrySet()) {
+						FunctionStats stats = merged.get(entry.getKey());
+						if (stats == null) {
+							stats = new FunctionStats(entry.getKey());
+							merged.put(entry.getKey(), stats);
+						}
+						stats.merge(entry.getValue());
+					}
+				} catch (ConcurrentModificationException e) {
+					// thread still running, keep what was merged so far
+				}
+			}
+		}
+		return new ArrayList<FunctionStats>(merged.values());
+	}
+
+	/**
+	 * Installs a new profile function for the calling thread.
+	 */
+	private FunctionProfileFunction install() {
+		FunctionProfileFunction function = new FunctionProfileFunction();
+		synchronized (mFunctions) {
+			mFunctions.add(function);
+		}
+		Py.getThreadState().profilefunc = function;
+		return function;
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.profiler;
+
+import org.eclipse.ease.lang.python.jython.debugger.ScriptCache;
+import org.python.core.PyBaseCode;
+
+/**
+ * Call count and timing of a single code object.
+ *
+ * Only updated by the thread owning it, results of all threads are merged
+ * once the run is finished.
+ *
+ * @author kloeschmartin
+ */
+public class FunctionStats {
+	private final PyBaseCode mCode;
+
+	private long mCalls = 0;
+
+	/**
+	 * Time in ns spent in function including callees. Recursive calls are only counted once.
+	 */
+	private long mInclusiveTime = 0;
+
+	/**
+	 * Time in ns spent in function itself.
+	 */
+	private long mExclusiveTime = 0;
+
+	/**
+	 * Number of active calls of this function on the owning thread's stack.
+	 */
+	int mActive = 0;
+
+	/**
+	 * Constructor only stores code object.
+	 *
+	 * @param code: code object of function.
+	 */
+	public FunctionStats(final PyBaseCode code) {
+		mCode = code;
+	}
+
+	void addCall() {
+		mCalls++;
+	}
+
+	void addTime(final long inclusive, final long exclusive) {
+		// only the outermost of recursive calls counts, inner calls are part of its time
+		if (mActive == 0)
+			mInclusiveTime += inclusive;
+		mExclusiveTime += exclusive;
+	}
+
+	/**
+	 * Adds counters of other stats of the same code object.
+	 *
+	 * @param other: stats collected by another thread.
+	 */
+	void merge(final FunctionStats other) {
+		mCalls += other.mCalls;
+		mInclusiveTime += other.mInclusiveTime;
+		mExclusiveTime += other.mExclusiveTime;
+	}
+
+	public String getName() {
+		return mCode.co_name;
+	}
+
+	/**
+	 * Getter method for location of function.
+	 *
+	 * @return "path:line" with filename mapped to workspace path where possible.
+	 */
+	public String getLocation() {
+		return getLocation(mCode);
+	}
+
+	/**
+	 * Helper method creating location of code object.
+	 *
+	 * Filenames are mapped to workspace paths as JythonDebugFrame does.
+	 *
+	 * @param code: code object.
+	 * @return "path:line" with filename mapped to workspace path where possible.
+	 */
+	static String getLocation(final PyBaseCode code) {
+		String filename = code.co_filename;
+		try {
+			filename = ScriptCache.toWorkspacePath(filename);
+		} catch (RuntimeException e) {
+			// not a file (e.g. <string>), keep name as it is
+		}
+		return filename + ":" + code.co_firstlineno;
+	}
+
+	public long getCalls() {
+		return mCalls;
+	}
+
+	public long getInclusiveTime() {
+		return mInclusiveTime;
+	}
+
+	public long getExclusiveTime() {
+		return mExclusiveTime;
+	}
+}
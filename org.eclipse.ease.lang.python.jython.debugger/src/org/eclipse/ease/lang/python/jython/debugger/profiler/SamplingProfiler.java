@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.profiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.python.core.Py;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.core.ThreadState;
+
+/**
+ * Profiler periodically sampling the Jython frame stacks of a script's threads.
+ *
+ * No trace function is installed, the script runs at full speed. A daemon
+ * thread reads the current frames of the script threads every interval
+ * and adds them to a call tree.
+ *
+ * Frames of all threads are read via sys._current_frames where available.
+ * Otherwise only the thread that started the script is sampled.
+ *
+ * @author kloeschmartin
+ */
+public class SamplingProfiler {
+	/**
+	 * System property for sampling interval in milliseconds.
+	 */
+	public static final String INTERVAL_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.profileInterval";
+
+	private static final int DEFAULT_INTERVAL = 10;
+
+	/**
+	 * Frames deeper than this are not sampled (protection against corrupted frame chains).
+	 */
+	private static final int MAX_DEPTH = 1024;
+
+	private final long mInterval;
+
+	/**
+	 * sys._current_frames of the script's system state, null if not supported by Jython version.
+	 */
+	private final PyObject mCurrentFrames;
+
+	private final PySystemState mSystemState;
+
+	private final CallTreeNode mRoot = new CallTreeNode(null);
+
+	/**
+	 * Thread state of the thread running the script.
+	 */
+	private ThreadState mScriptState = null;
+
+	/**
+	 * IDs of threads that existed before the script was started and do not belong to it.
+	 */
+	private final Set<Long> mForeignThreads = new HashSet<Long>();
+
+	private volatile Thread mSampler = null;
+
+	private long mSamples = 0;
+
+	/**
+	 * Reused list of frames of a single stack, innermost first.
+	 */
+	private final List<PyFrame> mStack = new ArrayList<PyFrame>();
+
+	/**
+	 * Constructor creates profiler with interval given by INTERVAL_PROPERTY.
+	 *
+	 * @param systemState: system state the script is run in.
+	 */
+	public SamplingProfiler(final PySystemState systemState) {
+		mSystemState = systemState;
+		mInterval = Math.max(1, Integer.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL));
+		mCurrentFrames = systemState.__findattr__("_current_frames");
+	}
+
+	/**
+	 * Starts sampling. Has to be called by the thread about to run the script.
+	 */
+	public synchronized void start() {
+		mScriptState = Py.getThreadState();
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread != Thread.currentThread())
+				mForeignThreads.add(thread.getId());
+		}
+
+		mSampler = new Thread("Jython sampling profiler") {
+			@Override
+			public void run() {
+				Py.setSystemState(mSystemState);
+				while (mSampler == this) {
+					try {
+						Thread.sleep(mInterval);
+					} catch (InterruptedException e) {
+						break;
+					}
+					sample();
+				}
+			}
+		};
+		mForeignThreads.add(mSampler.getId());
+		mSampler.setDaemon(true);
+		mSampler.start();
+	}
+
+	/**
+	 * Stops sampling and waits for the sampler thread to finish.
+	 */
+	public void stop() {
+		Thread sampler = mSampler;
+		mSampler = null;
+		if (sampler != null) {
+			sampler.interrupt();
+			try {
+				sampler.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Getter method for call tree. Only consistent after stop.
+	 *
+	 * @return root node of sampled call tree.
+	 */
+	public CallTreeNode getCallTree() {
+		return mRoot;
+	}
+
+	/**
+	 * Getter method for number of samples taken.
+	 *
+	 * @return number of sampled stacks.
+	 */
+	public long getSampleCount() {
+		return mSamples;
+	}
+
+	/**
+	 * Writes call tree in collapsed stack format to file.
+	 *
+	 * @param file: file to be written.
+	 * @throws IOException if writing fails.
+	 */
+	public void writeCollapsed(final File file) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			mRoot.writeCollapsed(writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Adds current stacks of all script threads to call tree.
+	 */
+	private void sample() {
+		if (mCurrentFrames == null) {
+			addStack(mScriptState.frame);
+			return;
+		}
+
+		PyObject frames = mCurrentFrames.__call__();
+		for (PyObject id : frames.asIterable()) {
+			if (mForeignThreads.contains(id.asLong()))
+				continue;
+
+			PyObject frame = frames.__finditem__(id);
+			if (frame instanceof PyFrame)
+				addStack((PyFrame) frame);
+		}
+	}
+
+	/**
+	 * Adds a single stack to call tree.
+	 *
+	 * @param frame: innermost frame of stack (may be null if thread is not running Python code).
+	 */
+	private void addStack(final PyFrame frame) {
+		mStack.clear();
+		for (PyFrame current = frame; (current != null) && (mStack.size() < MAX_DEPTH); current = current.f_back)
+			mStack.add(current);
+		if (mStack.isEmpty())
+			return;
+
+		CallTreeNode node = mRoot;
+		node.addSample(false);
+		for (int index = mStack.size() - 1; index >= 0; index--) {
+			node = node.getChild(mStack.get(index).f_code);
+			node.addSample(index == 0);
+		}
+		mSamples++;
+	}
+}
@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.ease.lang.python.jython.debugger.TraceFunctionAdapter;
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyObject;
+import org.python.core.imp;
+
+/**
+ * Records every traced event of a script to a trace file for later replay.
+ *
+ * Events are appended as fixed size records to a memory-mapped trace file,
+ * so recording never waits for the disk. The trace file is a ring of records:
+ * once the size given by MAX_SIZE_PROPERTY is reached the oldest records are
+ * overwritten, so the events leading up to a failure are always kept.
+ *
+ * Filenames, function names and threads are written once to a separate
+ * string table file and only referenced by id in the records. Each entry is
+ * flushed immediately, so the table is complete even if the recording
+ * process is killed.
+ *
+ * Trace file layout (see ExecutionRecording for reading it):
+ * <pre>
+ * header (HEADER_SIZE bytes):
+ *   int   TRACE_MAGIC
+ *   int   VERSION
+ *   long  capacity (number of records in the ring)
+ *   long  number of records ever written, 0 until recording is closed
+ * record (RECORD_SIZE bytes), record n is stored at index n % capacity:
+ *   int   thread id
+ *   int   code id
+ *   int   line
+ *   short depth of frame on thread's stack
+ *   byte  event (EVENT_*)
+ *   byte  lap (n / capacity, truncated to a byte)
+ * </pre>
+ *
+ * String table layout:
+ * <pre>
+ *   int   STRINGS_MAGIC
+ *   int   VERSION
+ *   entries:
+ *     byte TAG_STRING, int id, UTF value
+ *     byte TAG_CODE, int id, int filename string id, int name string id, int first line
+ *     byte TAG_THREAD, int id, UTF thread name
+ * </pre>
+ *
+ * @author kloeschmartin
+ */
+public class ExecutionRecorder {
+	/**
+	 * System property for maximum size of trace file in megabytes.
+	 */
+	public static final String MAX_SIZE_PROPERTY = "org.eclipse.ease.lang.python.jython.debugger.recordingMaxSize";
+
+	private static final int DEFAULT_MAX_SIZE = 1024;
+
+	/**
+	 * "PYTR"
+	 */
+	public static final int TRACE_MAGIC = 0x50595452;
+
+	/**
+	 * "PYST"
+	 */
+	public static final int STRINGS_MAGIC = 0x50595354;
+
+	public static final int VERSION = 2;
+
+	public static final int HEADER_SIZE = 24;
+	public static final int RECORD_SIZE = 16;
+
+	/**
+	 * Events of records. 0 marks a record that was reserved but never written.
+	 */
+	public static final byte EVENT_CALL = 1;
+	public static final byte EVENT_LINE = 2;
+	public static final byte EVENT_RETURN = 3;
+	public static final byte EVENT_EXCEPTION = 4;
+
+	static final byte TAG_STRING = 1;
+	static final byte TAG_CODE = 2;
+	static final byte TAG_THREAD = 3;
+
+	/**
+	 * Trace file is mapped in chunks of this many records.
+	 */
+	private static final int CHUNK_RECORDS = 1 << 22;
+
+	private static final String PyThreading = "threading";
+	private static final String PySetTrace = "settrace";
+
+	private final File mTraceFile;
+
+	private final RandomAccessFile mTrace;
+	private final FileChannel mChannel;
+	private final DataOutputStream mStrings;
+
+	/**
+	 * Number of records in the ring.
+	 */
+	private final long mCapacity;
+
+	/**
+	 * Mapped chunks of trace file, mapped on first use.
+	 */
+	private final AtomicReferenceArray<MappedByteBuffer> mChunks;
+
+	/**
+	 * Number of next record to be written, counting records already overwritten.
+	 */
+	private final AtomicLong mNextRecord = new AtomicLong(0);
+
+	private volatile boolean mClosed = false;
+
+	/**
+	 * Ids of code objects and strings already written to the string table.
+	 */
+	private final Map<PyBaseCode, Integer> mCodeIds = new IdentityHashMap<PyBaseCode, Integer>();
+	private final Map<String, Integer> mStringIds = new HashMap<String, Integer>();
+	private int mNextThreadId = 0;
+
+	private PyObject mThreading = null;
+
+	/**
+	 * Trace function for threads started by the script.
+	 *
+	 * threading passes it to sys.settrace in the new thread, on the first
+	 * event it replaces itself with a RecordingTraceFunction.
+	 */
+	private class Bootstrap extends PyObject {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public PyObject __call__(final PyObject[] args, final String[] keywords) {
+			RecordingTraceFunction function = install();
+
+			// first event is the call of the thread's run method, its lines still reach this Python trace function
+			return TraceFunctionAdapter.traceCall(function, args);
+		}
+	}
+
+	/**
+	 * Constructor creates trace and string table files.
+	 *
+	 * @param traceFile: trace file to create, string table is created next to it (see ExecutionRecording.getStringsFile).
+	 * @throws IOException if files cannot be created.
+	 */
+	public ExecutionRecorder(final File traceFile) throws IOException {
+		mTraceFile = traceFile;
+		mCapacity = (Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE) * 1024L * 1024L - HEADER_SIZE) / RECORD_SIZE;
+		mChunks = new AtomicReferenceArray<MappedByteBuffer>((int) ((mCapacity + CHUNK_RECORDS - 1) / CHUNK_RECORDS));
+
+		mStrings = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(ExecutionRecording.getStringsFile(traceFile))));
+		mStrings.writeInt(STRINGS_MAGIC);
+		mStrings.writeInt(VERSION);
+		mStrings.flush();
+
+		mTrace = new RandomAccessFile(traceFile, "rw");
+		mTrace.setLength(0);
+		mTrace.writeInt(TRACE_MAGIC);
+		mTrace.writeInt(VERSION);
+		mTrace.writeLong(mCapacity);
+		mTrace.writeLong(0);
+		mChannel = mTrace.getChannel();
+	}
+
+	/**
+	 * Starts recording. Has to be called by the thread about to run the script.
+	 */
+	public void start() {
+		install();
+		mThreading = imp.importName(PyThreading, true);
+		mThreading.invoke(PySetTrace, new Bootstrap());
+	}
+
+	/**
+	 * Stops recording. Has to be called by the thread that started recording.
+	 *
+	 * Threads of the script still running keep recording until close is called.
+	 */
+	public void stop() {
+		Py.getThreadState().tracefunc = null;
+		if (mThreading != null)
+			mThreading.invoke(PySetTrace, Py.None);
+	}
+
+	/**
+	 * Writes number of written records to trace file and closes both files.
+	 *
+	 * Events of threads still running are dropped from now on.
+	 *
+	 * @throws IOException if files cannot be written.
+	 */
+	public synchronized void close() throws IOException {
+		mClosed = true;
+		long records = mNextRecord.get();
+		try {
+			for (int index = 0; index < mChunks.length(); index++) {
+				MappedByteBuffer chunk = mChunks.get(index);
+				if (chunk != null)
+					chunk.force();
+			}
+			mTrace.seek(16);
+			mTrace.writeLong(records);
+		} finally {
+			mTrace.close();
+			mStrings.close();
+		}
+	}
+
+	public File getTraceFile() {
+		return mTraceFile;
+	}
+
+	/**
+	 * Getter method for number of recorded events.
+	 *
+	 * @return number of records kept in trace file, not counting overwritten ones.
+	 */
+	public long getRecordCount() {
+		return Math.min(mNextRecord.get(), mCapacity);
+	}
+
+	/**
+	 * Getter method to check if the oldest events were overwritten.
+	 *
+	 * @return true if maximum trace file size was reached.
+	 */
+	public boolean isWrapped() {
+		return mNextRecord.get() > mCapacity;
+	}
+
+	// ************************************************************
+	// Methods called by RecordingTraceFunction
+	// ************************************************************
+
+	/**
+	 * Appends record to trace file, overwriting the oldest record once the
+	 * ring is full. Never blocks unless a new chunk has to be mapped.
+	 */
+	void record(final int thread, final int code, final int line, final int depth, final byte event) {
+		if (mClosed)
+			return;
+
+		long number = mNextRecord.getAndIncrement();
+		long index = number % mCapacity;
+
+		MappedByteBuffer chunk = getChunk((int) (index / CHUNK_RECORDS));
+		if (chunk == null)
+			return;
+
+		// absolute puts do not touch the buffer's position, threads write disjoint records
+		int offset = (int) (index % CHUNK_RECORDS) * RECORD_SIZE;
+		chunk.putInt(offset, thread);
+		chunk.putInt(offset + 4, code);
+		chunk.putInt(offset + 8, line);
+		chunk.putShort(offset + 12, (short) Math.min(depth, Short.MAX_VALUE));
+		chunk.put(offset + 14, event);
+		chunk.put(offset + 15, (byte) (number / mCapacity));
+	}
+
+	/**
+	 * Getter method for id of code object, writes it to string table on first call.
+	 */
+	synchronized int getCodeId(final PyBaseCode code) {
+		Integer id = mCodeIds.get(code);
+		if (id == null) {
+			id = mCodeIds.size();
+			mCodeIds.put(code, id);
+			try {
+				int filename = getStringId(code.co_filename);
+				int name = getStringId(code.co_name);
+				mStrings.writeByte(TAG_CODE);
+				mStrings.writeInt(id);
+				mStrings.writeInt(filename);
+				mStrings.writeInt(name);
+				mStrings.writeInt(code.co_firstlineno);
+				mStrings.flush();
+			} catch (IOException e) {
+				// string table closed, records of code cannot be replayed anyway
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Getter method for new thread id, writes thread name to string table.
+	 */
+	synchronized int createThreadId(final String name) {
+		int id = mNextThreadId++;
+		try {
+			mStrings.writeByte(TAG_THREAD);
+			mStrings.writeInt(id);
+			mStrings.writeUTF(name);
+			mStrings.flush();
+		} catch (IOException e) {
+			// string table closed, thread is replayed without name
+		}
+		return id;
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	/**
+	 * Installs a new trace function for the calling thread.
+	 */
+	private RecordingTraceFunction install() {
+		RecordingTraceFunction function = new RecordingTraceFunction(this, createThreadId(Thread.currentThread().getName()));
+		Py.getThreadState().tracefunc = function;
+		return function;
+	}
+
+	/**
+	 * Helper method getting string id, must only be called while holding the lock.
+	 */
+	private int getStringId(final String value) throws IOException {
+		String key = (value == null) ? "" : value;
+		Integer id = mStringIds.get(key);
+		if (id == null) {
+			id = mStringIds.size();
+			mStringIds.put(key, id);
+			mStrings.writeByte(TAG_STRING);
+			mStrings.writeInt(id);
+			mStrings.writeUTF(key);
+		}
+		return id;
+	}
+
+	/**
+	 * Helper method getting mapped chunk, maps it on first use.
+	 *
+	 * @return mapped chunk, null if it could not be mapped.
+	 */
+	private MappedByteBuffer getChunk(final int index) {
+		MappedByteBuffer chunk = mChunks.get(index);
+		if (chunk != null)
+			return chunk;
+
+		synchronized (mChunks) {
+			chunk = mChunks.get(index);
+			if (chunk == null) {
+				long records = Math.min(CHUNK_RECORDS, mCapacity - (long) index * CHUNK_RECORDS);
+				try {
+					chunk = mChannel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (long) index * CHUNK_RECORDS * RECORD_SIZE, records * RECORD_SIZE);
+				} catch (IOException e) {
+					// file closed or disk full, drop records of this chunk
+					return null;
+				}
+				mChunks.set(index, chunk);
+			}
+			return chunk;
+		}
+	}
+}
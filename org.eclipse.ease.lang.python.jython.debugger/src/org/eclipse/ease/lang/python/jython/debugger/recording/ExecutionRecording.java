@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.recording;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to a trace file written by ExecutionRecorder.
+ *
+ * The trace file is mapped read-only in chunks, records are only decoded
+ * when accessed. String table, code objects and thread names are read
+ * completely when the recording is opened.
+ *
+ * Records are numbered from 0 (oldest kept record) to getRecordCount() - 1,
+ * independent of where the recorder's ring wrapped around.
+ *
+ * @author kloeschmartin
+ */
+public class ExecutionRecording {
+	private static final String TRACE_EXTENSION = ".trace";
+	private static final String STRINGS_EXTENSION = ".strings";
+
+	/**
+	 * Trace file is mapped in chunks of this many records.
+	 */
+	private static final int CHUNK_RECORDS = 1 << 22;
+
+	/**
+	 * Recorded code object.
+	 */
+	public static class Code {
+		private final String mFilename;
+		private final String mName;
+		private final int mFirstLine;
+
+		private Code(final String filename, final String name, final int firstLine) {
+			mFilename = filename;
+			mName = name;
+			mFirstLine = firstLine;
+		}
+
+		/**
+		 * @return filename as reported by Jython.
+		 */
+		public String getFilename() {
+			return mFilename;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public int getFirstLine() {
+			return mFirstLine;
+		}
+	}
+
+	private final File mTraceFile;
+	private final RandomAccessFile mTrace;
+	private final long mRecordCount;
+
+	/**
+	 * Number of records in the recorder's ring.
+	 */
+	private final long mCapacity;
+
+	/**
+	 * Ring index of the oldest kept record.
+	 */
+	private final long mStart;
+	private final MappedByteBuffer[] mChunks;
+
+	private final List<Code> mCodes = new ArrayList<Code>();
+	private final Map<Integer, String> mThreadNames = new HashMap<Integer, String>();
+
+	/**
+	 * Constructor opens trace file and reads string table.
+	 *
+	 * @param traceFile: trace file written by ExecutionRecorder.
+	 * @throws IOException if files cannot be read or have wrong format.
+	 */
+	public ExecutionRecording(final File traceFile) throws IOException {
+		mTraceFile = traceFile;
+		readStrings(getStringsFile(traceFile));
+
+		mTrace = new RandomAccessFile(traceFile, "r");
+		try {
+			if (mTrace.readInt() != ExecutionRecorder.TRACE_MAGIC)
+				throw new IOException(traceFile + " is no trace file");
+			int version = mTrace.readInt();
+			if (version != ExecutionRecorder.VERSION)
+				throw new IOException("Unsupported trace file version " + version + " in " + traceFile);
+
+			long capacity = mTrace.readLong();
+			long written = mTrace.readLong();
+			long available = Math.min(capacity, (mTrace.length() - ExecutionRecorder.HEADER_SIZE) / ExecutionRecorder.RECORD_SIZE);
+
+			mChunks = new MappedByteBuffer[(int) ((available + CHUNK_RECORDS - 1) / CHUNK_RECORDS)];
+			FileChannel channel = mTrace.getChannel();
+			for (int index = 0; index < mChunks.length; index++) {
+				long size = Math.min(CHUNK_RECORDS, available - (long) index * CHUNK_RECORDS) * ExecutionRecorder.RECORD_SIZE;
+				mChunks[index] = channel.map(FileChannel.MapMode.READ_ONLY, ExecutionRecorder.HEADER_SIZE + (long) index * CHUNK_RECORDS * ExecutionRecorder.RECORD_SIZE, size);
+			}
+			mCapacity = Math.max(available, 1);
+
+			if ((written > 0) && (Math.min(written, capacity) <= available)) {
+				mRecordCount = Math.min(written, capacity);
+				mStart = (written > capacity) ? written % capacity : 0;
+			} else {
+				// recorder was killed before writing the count, find end of ring by lap markers
+				long end = findEnd(available);
+				boolean wrapped = (end < available) && (getEventAt(end) != 0);
+				mRecordCount = wrapped ? available : end;
+				mStart = wrapped ? end : 0;
+			}
+		} catch (IOException e) {
+			mTrace.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Helper method getting string table belonging to trace file.
+	 *
+	 * @param traceFile: trace file.
+	 * @return string table file next to trace file.
+	 */
+	public static File getStringsFile(final File traceFile) {
+		String name = traceFile.getName();
+		if (name.endsWith(TRACE_EXTENSION))
+			name = name.substring(0, name.length() - TRACE_EXTENSION.length());
+		return new File(traceFile.getParentFile(), name + STRINGS_EXTENSION);
+	}
+
+	/**
+	 * Closes trace file. Records must not be accessed afterwards.
+	 */
+	public void close() {
+		try {
+			mTrace.close();
+		} catch (IOException e) {
+			// nothing to do, file was only read
+		}
+	}
+
+	public File getTraceFile() {
+		return mTraceFile;
+	}
+
+	public long getRecordCount() {
+		return mRecordCount;
+	}
+
+	public int getThread(final long record) {
+		long index = getIndex(record);
+		return getChunk(index).getInt(getOffset(index));
+	}
+
+	public int getCodeId(final long record) {
+		long index = getIndex(record);
+		return getChunk(index).getInt(getOffset(index) + 4);
+	}
+
+	public int getLine(final long record) {
+		long index = getIndex(record);
+		return getChunk(index).getInt(getOffset(index) + 8);
+	}
+
+	public int getDepth(final long record) {
+		long index = getIndex(record);
+		return getChunk(index).getShort(getOffset(index) + 12);
+	}
+
+	/**
+	 * @return one of ExecutionRecorder.EVENT_*, 0 if record was never written.
+	 */
+	public byte getEvent(final long record) {
+		return getEventAt(getIndex(record));
+	}
+
+	/**
+	 * Getter method for code object of record.
+	 *
+	 * @return recorded code object, null if unknown.
+	 */
+	public Code getCode(final long record) {
+		int id = getCodeId(record);
+		return ((id >= 0) && (id < mCodes.size())) ? mCodes.get(id) : null;
+	}
+
+	/**
+	 * Getter method for all recorded code objects.
+	 *
+	 * @return code objects indexed by code id.
+	 */
+	public List<Code> getCodes() {
+		return mCodes;
+	}
+
+	/**
+	 * Getter method for name of recorded thread.
+	 *
+	 * @param thread: thread id of record.
+	 * @return thread name at time recording started.
+	 */
+	public String getThreadName(final int thread) {
+		String name = mThreadNames.get(thread);
+		return (name == null) ? "Thread " + thread : name;
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	/**
+	 * Helper method getting ring index of a record.
+	 */
+	private long getIndex(final long record) {
+		return (mStart + record) % mCapacity;
+	}
+
+	private MappedByteBuffer getChunk(final long index) {
+		return mChunks[(int) (index / CHUNK_RECORDS)];
+	}
+
+	private static int getOffset(final long index) {
+		return (int) (index % CHUNK_RECORDS) * ExecutionRecorder.RECORD_SIZE;
+	}
+
+	private byte getEventAt(final long index) {
+		return getChunk(index).get(getOffset(index) + 14);
+	}
+
+	private byte getLapAt(final long index) {
+		return getChunk(index).get(getOffset(index) + 15);
+	}
+
+	/**
+	 * Helper method finding the ring index after the newest record.
+	 *
+	 * The newest records are at the start of the ring and carry the lap of
+	 * ring index 0. They end at the first record never written or written in
+	 * the previous lap.
+	 *
+	 * @param available: number of records in mapped chunks.
+	 * @return ring index after newest record, available if ring ends exactly at its end.
+	 */
+	private long findEnd(final long available) {
+		if (available == 0)
+			return 0;
+
+		byte lap = getLapAt(0);
+		for (long index = 0; index < available; index++) {
+			if ((getEventAt(index) == 0) || (getLapAt(index) != lap))
+				return index;
+		}
+		return available;
+	}
+
+	private void readStrings(final File file) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (input.readInt() != ExecutionRecorder.STRINGS_MAGIC)
+				throw new IOException(file + " is no string table");
+			int version = input.readInt();
+			if (version != ExecutionRecorder.VERSION)
+				throw new IOException("Unsupported string table version " + version + " in " + file);
+
+			Map<Integer, String> strings = new HashMap<Integer, String>();
+			while (true) {
+				int tag = input.read();
+				if (tag < 0)
+					break;
+
+				if (tag == ExecutionRecorder.TAG_STRING) {
+					int id = input.readInt();
+					strings.put(id, input.readUTF());
+				} else if (tag == ExecutionRecorder.TAG_CODE) {
+					int id = input.readInt();
+					String filename = strings.get(input.readInt());
+					String name = strings.get(input.readInt());
+					int firstLine = input.readInt();
+					// ids are assigned in order of writing
+					while (mCodes.size() <= id)
+						mCodes.add(null);
+					mCodes.set(id, new Code(filename, name, firstLine));
+				} else if (tag == ExecutionRecorder.TAG_THREAD) {
+					int id = input.readInt();
+					mThreadNames.put(id, input.readUTF());
+				} else {
+					throw new IOException("Corrupt string table " + file);
+				}
+			}
+		} catch (EOFException e) {
+			// recorder was killed while writing, keep entries read so far
+		} finally {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.recording;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyException;
+import org.python.core.PyFrame;
+import org.python.core.PyObject;
+import org.python.core.TraceFunction;
+
+/**
+ * Trace function of a single thread appending every event to the ExecutionRecorder.
+ *
+ * Keeps its own stack of active frames to record the depth of each event,
+ * which replay needs for stepping over and out of calls. Jython does not
+ * report a return event for frames left by an exception, such frames are
+ * popped once an event of a frame below them arrives.
+ *
+ * @author kloeschmartin
+ */
+public class RecordingTraceFunction extends TraceFunction {
+	private final ExecutionRecorder mRecorder;
+
+	private final int mThreadId;
+
+	/**
+	 * Code ids already looked up by this thread.
+	 */
+	private final Map<PyBaseCode, Integer> mCodeIds = new IdentityHashMap<PyBaseCode, Integer>();
+
+	/**
+	 * Last looked up code object, consecutive lines mostly belong to the same frame.
+	 */
+	private PyBaseCode mLastCode = null;
+	private int mLastCodeId = -1;
+
+	private PyFrame[] mFrames = new PyFrame[64];
+	private int mDepth = 0;
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param recorder: recorder to append events to.
+	 * @param threadId: id of thread in recording.
+	 */
+	RecordingTraceFunction(final ExecutionRecorder recorder, final int threadId) {
+		mRecorder = recorder;
+		mThreadId = threadId;
+	}
+
+	// ************************************************************
+	// TraceFunction
+	// ************************************************************
+
+	@Override
+	public TraceFunction traceCall(final PyFrame frame) {
+		if (Py.getThreadState().tracing)
+			return null;
+
+		// frames below are still active, frames above were left by an exception
+		int depth = getDepth(frame.f_back) + 1;
+		if (depth == mFrames.length)
+			mFrames = Arrays.copyOf(mFrames, depth * 2);
+		mFrames[depth] = frame;
+		mDepth = depth + 1;
+
+		record(frame, frame.f_code.co_firstlineno, depth, ExecutionRecorder.EVENT_CALL);
+		return this;
+	}
+
+	@Override
+	public TraceFunction traceLine(final PyFrame frame, final int line) {
+		record(frame, line, getDepth(frame), ExecutionRecorder.EVENT_LINE);
+		return this;
+	}
+
+	@Override
+	public TraceFunction traceReturn(final PyFrame frame, final PyObject ret) {
+		int depth = getDepth(frame);
+		record(frame, frame.f_lineno, depth, ExecutionRecorder.EVENT_RETURN);
+
+		if (depth >= 0) {
+			mFrames[depth] = null;
+			mDepth = depth;
+		}
+		return this;
+	}
+
+	@Override
+	public TraceFunction traceException(final PyFrame frame, final PyException exc) {
+		record(frame, frame.f_lineno, getDepth(frame), ExecutionRecorder.EVENT_EXCEPTION);
+		return this;
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	private void record(final PyFrame frame, final int line, final int depth, final byte event) {
+		PyBaseCode code = frame.f_code;
+		if (code != mLastCode) {
+			Integer id = mCodeIds.get(code);
+			if (id == null) {
+				id = mRecorder.getCodeId(code);
+				mCodeIds.put(code, id);
+			}
+			mLastCode = code;
+			mLastCodeId = id;
+		}
+		mRecorder.record(mThreadId, mLastCodeId, line, depth, event);
+	}
+
+	/**
+	 * Helper method getting depth of frame and popping frames above it.
+	 *
+	 * Frames entered before recording started are not on the stack, their
+	 * depth is -1 so the frames they call start at depth 0.
+	 *
+	 * @param frame: active frame.
+	 * @return index of frame on stack, -1 if not on stack.
+	 */
+	private int getDepth(final PyFrame frame) {
+		int index = mDepth - 1;
+		while ((index >= 0) && (mFrames[index] != frame))
+			index--;
+		if (index < 0)
+			return -1;
+
+		while (mDepth > index + 1)
+			mFrames[--mDepth] = null;
+		return index;
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.recording;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.ease.Script;
+import org.eclipse.ease.debugging.IScriptDebugFrame;
+import org.eclipse.ease.lang.python.jython.debugger.ScriptCache;
+
+/**
+ * IScriptDebugFrame of a replayed stack.
+ *
+ * Recordings only contain lines, so instead of local variables the frame
+ * shows the recorded function and position in the recording.
+ *
+ * @author kloeschmartin
+ */
+public class ReplayDebugFrame implements IScriptDebugFrame {
+	private final String mFilename;
+	private final int mLineNumber;
+	private final Map<String, Object> mVariables = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param filename: absolute filename of frame.
+	 * @param linenumber: recorded line of frame.
+	 * @param function: name of recorded code object.
+	 * @param record: index of record frame was taken from.
+	 */
+	public ReplayDebugFrame(final String filename, final int linenumber, final String function, final long record) {
+		mFilename = filename;
+		mLineNumber = linenumber;
+		mVariables.put("function", function);
+		mVariables.put("record", record);
+	}
+
+	@Override
+	public int getLineNumber() {
+		return mLineNumber;
+	}
+
+	@Override
+	public Script getScript() {
+		return ScriptCache.getScript(mFilename);
+	}
+
+	@Override
+	public int getType() {
+		return 0;
+	}
+
+	@Override
+	public String getName() {
+		return ScriptCache.getWorkspacePath(mFilename);
+	}
+
+	@Override
+	public Map<String, Object> getVariables() {
+		return mVariables;
+	}
+}
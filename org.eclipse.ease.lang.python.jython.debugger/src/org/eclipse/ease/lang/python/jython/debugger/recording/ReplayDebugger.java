@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Martin Kloesch and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Martin Kloesch - initial implementation
+ *******************************************************************************/
+package org.eclipse.ease.lang.python.jython.debugger.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.debug.core.DebugEvent;
+import org.eclipse.ease.Script;
+import org.eclipse.ease.debugging.EventDispatchJob;
+import org.eclipse.ease.debugging.IEventProcessor;
+import org.eclipse.ease.debugging.IScriptDebugFrame;
+import org.eclipse.ease.debugging.events.EngineStartedEvent;
+import org.eclipse.ease.debugging.events.EngineTerminatedEvent;
+import org.eclipse.ease.debugging.events.IDebugEvent;
+import org.eclipse.ease.debugging.events.ResumeRequest;
+import org.eclipse.ease.debugging.events.ResumedEvent;
+import org.eclipse.ease.debugging.events.ScriptReadyEvent;
+import org.eclipse.ease.debugging.events.SuspendedEvent;
+import org.eclipse.ease.debugging.events.TerminateRequest;
+import org.eclipse.ease.lang.python.jython.debugger.BreakpointIndex;
+import org.eclipse.ease.lang.python.jython.debugger.BreakpointInfo;
+import org.eclipse.ease.lang.python.jython.debugger.EventChannel;
+
+/**
+ * Debugger replaying an ExecutionRecording instead of running a script.
+ *
+ * Takes the place of JythonDebugger for a JythonDebugTarget, so the usual
+ * debug UI steps through the recorded line history. Additionally steps can
+ * be made backwards (see ReplayDebugTarget.stepBack).
+ *
+ * Resuming runs to the next recorded line with an enabled breakpoint.
+ * Conditions and hit counts cannot be evaluated since no variables are
+ * recorded, logpoints are ignored.
+ *
+ * Commands are queued and handled by the engine thread calling run, the
+ * same thread that would run the script in a normal debug session.
+ *
+ * @author kloeschmartin
+ */
+public class ReplayDebugger implements IEventProcessor {
+	/**
+	 * Step command for run loop.
+	 */
+	private static class Step {
+		private final int mType;
+		private final boolean mBackward;
+
+		private Step(final int type, final boolean backward) {
+			mType = type;
+			mBackward = backward;
+		}
+	}
+
+	/**
+	 * Marker command to end replay.
+	 */
+	private static final Step TERMINATE = new Step(DebugEvent.TERMINATE, false);
+
+	private static final Step RESUME = new Step(DebugEvent.RESUME, false);
+
+	private final File mTraceFile;
+	private final BreakpointIndex mBreakpointIndex;
+	private final BlockingQueue<Step> mCommands = new LinkedBlockingQueue<Step>();
+	private EventChannel mChannel;
+
+	private ExecutionRecording mRecording = null;
+
+	/**
+	 * Stand-in Thread objects for recorded threads.
+	 */
+	private final Map<Integer, Thread> mThreads = new HashMap<Integer, Thread>();
+
+	/**
+	 * Absolute filenames of recorded filenames.
+	 */
+	private final Map<String, String> mFilenames = new HashMap<String, String>();
+
+	/**
+	 * Index of record replay is suspended at.
+	 */
+	private long mPosition = -1;
+
+	/**
+	 * Index of first recorded line.
+	 */
+	private long mFirstLine = -1;
+
+	/**
+	 * Constructor only stores necessary information.
+	 *
+	 * @param traceFile: trace file written by ExecutionRecorder.
+	 * @param breakpointIndex: index of enabled breakpoints kept up to date by debug target.
+	 */
+	public ReplayDebugger(final File traceFile, final BreakpointIndex breakpointIndex) {
+		mTraceFile = traceFile;
+		mBreakpointIndex = breakpointIndex;
+	}
+
+	/**
+	 * Setter method for dispatcher.
+	 *
+	 * @param dispatcher: dispatcher for communication between debugger and debug target.
+	 */
+	public void setDispatcher(final EventDispatchJob dispatcher) {
+		mChannel = new EventChannel(dispatcher);
+	}
+
+	/**
+	 * Queues step backwards. May be called from any thread.
+	 *
+	 * @param type: DebugEvent.STEP_INTO, STEP_OVER, STEP_RETURN or RESUME.
+	 */
+	public void stepBack(final int type) {
+		mCommands.add(new Step(type, true));
+	}
+
+	/**
+	 * Function called to handle incoming event.
+	 */
+	@Override
+	public void handleEvent(final IDebugEvent event) {
+		if (event instanceof ResumeRequest) {
+			mCommands.add(new Step(((ResumeRequest) event).getType(), false));
+		} else if (event instanceof TerminateRequest) {
+			mCommands.add(TERMINATE);
+		}
+	}
+
+	/**
+	 * Replays recording until end of recording is reached or replay is terminated.
+	 *
+	 * @param script: script that was recorded.
+	 * @param errorStream: stream to report errors reading the recording to.
+	 */
+	public void run(final Script script, final PrintStream errorStream) {
+		fireDispatchEvent(new EngineStartedEvent());
+		try {
+			mRecording = new ExecutionRecording(mTraceFile);
+			mFirstLine = find(-1, new Step(DebugEvent.STEP_INTO, false), -1, 0, null, false);
+			if (mFirstLine < 0)
+				return;
+
+			fireDispatchEvent(new ScriptReadyEvent(script, getThread(mRecording.getThread(mFirstLine)), true));
+			suspend(mFirstLine, DebugEvent.STEP_END);
+
+			while (true) {
+				Step step = mCommands.take();
+				if ((step == TERMINATE) || !handleStep(step))
+					break;
+			}
+		} catch (IOException e) {
+			errorStream.println("Could not read recording: " + e.getMessage());
+		} catch (InterruptedException e) {
+			// engine terminated
+		} finally {
+			if (mRecording != null)
+				mRecording.close();
+			fireDispatchEvent(new EngineTerminatedEvent());
+			if (mChannel != null)
+				mChannel.close();
+		}
+	}
+
+	// ************************************************************
+	// Helper methods
+	// ************************************************************
+
+	/**
+	 * Moves replay position according to step command.
+	 *
+	 * @return false if end of recording was reached.
+	 */
+	private boolean handleStep(final Step step) {
+		int thread = mRecording.getThread(mPosition);
+		int depth = mRecording.getDepth(mPosition);
+		BitSet[] breakpoints = getBreakpointLines();
+		boolean resume = isResume(step.mType);
+
+		long target = find(mPosition, step, thread, depth, breakpoints, step.mBackward);
+		if ((target < 0) && !resume && !step.mBackward) {
+			// thread finished, other threads continue to the next breakpoint
+			target = find(mPosition, RESUME, thread, depth, breakpoints, false);
+			resume = true;
+		}
+
+		if (target < 0) {
+			if (!step.mBackward)
+				return false;
+			// nothing before, resume goes back to start, steps stay
+			target = resume ? mFirstLine : mPosition;
+		}
+
+		fireDispatchEvent(new ResumedEvent(getThread(thread), step.mType));
+		suspend(target, (resume && isBreakpoint(breakpoints, target)) ? DebugEvent.BREAKPOINT : DebugEvent.STEP_END);
+		return true;
+	}
+
+	/**
+	 * Searches next recorded line matching step command.
+	 *
+	 * @param start: record to start after (or before if backward).
+	 * @param step: step command.
+	 * @param thread: thread of current position.
+	 * @param depth: depth of current position.
+	 * @param breakpoints: breakpoint lines per code id, only needed for resume.
+	 * @param backward: true to search backwards.
+	 * @return index of matching record, -1 if none.
+	 */
+	private long find(final long start, final Step step, final int thread, final int depth, final BitSet[] breakpoints, final boolean backward) {
+		long count = mRecording.getRecordCount();
+		int increment = backward ? -1 : 1;
+		for (long record = start + increment; (record >= 0) && (record < count); record += increment) {
+			if (mRecording.getEvent(record) != ExecutionRecorder.EVENT_LINE)
+				continue;
+
+			if (isResume(step.mType)) {
+				if (isBreakpoint(breakpoints, record))
+					return record;
+			} else if ((thread < 0) || (mRecording.getThread(record) == thread)) {
+				if ((step.mType == DebugEvent.STEP_INTO) || ((step.mType == DebugEvent.STEP_OVER) && (mRecording.getDepth(record) <= depth))
+						|| ((step.mType == DebugEvent.STEP_RETURN) && (mRecording.getDepth(record) < depth)))
+					return record;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isResume(final int type) {
+		return (type != DebugEvent.STEP_INTO) && (type != DebugEvent.STEP_OVER) && (type != DebugEvent.STEP_RETURN);
+	}
+
+	private boolean isBreakpoint(final BitSet[] breakpoints, final long record) {
+		int code = mRecording.getCodeId(record);
+		return (code >= 0) && (code < breakpoints.length) && (breakpoints[code] != null) && breakpoints[code].get(mRecording.getLine(record));
+	}
+
+	/**
+	 * Helper method collecting suspending breakpoint lines of every recorded code object.
+	 *
+	 * @return breakpoint lines indexed by code id, null entries for code without breakpoints.
+	 */
+	private BitSet[] getBreakpointLines() {
+		List<ExecutionRecording.Code> codes = mRecording.getCodes();
+		BitSet[] lines = new BitSet[codes.size()];
+		Map<String, BitSet> files = new HashMap<String, BitSet>();
+		for (int id = 0; id < lines.length; id++) {
+			ExecutionRecording.Code code = codes.get(id);
+			if (code == null)
+				continue;
+
+			String filename = getFilename(code);
+			if (!files.containsKey(filename)) {
+				BitSet fileLines = null;
+				for (BreakpointInfo info : mBreakpointIndex.getBreakpoints(filename)) {
+					if (info.getLogMessage() != null)
+						continue;
+					if (fileLines == null)
+						fileLines = new BitSet();
+					fileLines.set(info.getLinenumber());
+				}
+				files.put(filename, fileLines);
+			}
+			lines[id] = files.get(filename);
+		}
+		return lines;
+	}
+
+	/**
+	 * Suspends replay at record and sends its stack to the debug target.
+	 */
+	private void suspend(final long record, final int detail) {
+		mPosition = record;
+		fireDispatchEvent(new SuspendedEvent(detail, getThread(mRecording.getThread(record)), getStack(record)));
+	}
+
+	/**
+	 * Helper method reconstructing stack of record.
+	 *
+	 * Each caller's frame is at the last line its thread recorded one level
+	 * further out before the record.
+	 *
+	 * @return stack frames, innermost first.
+	 */
+	private List<IScriptDebugFrame> getStack(final long record) {
+		List<IScriptDebugFrame> stack = new ArrayList<IScriptDebugFrame>();
+		stack.add(createFrame(record));
+
+		int thread = mRecording.getThread(record);
+		int level = mRecording.getDepth(record) - 1;
+		for (long current = record - 1; (current >= 0) && (level >= 0); current--) {
+			if (mRecording.getThread(current) != thread)
+				continue;
+
+			byte event = mRecording.getEvent(current);
+			if ((event != ExecutionRecorder.EVENT_LINE) && (event != ExecutionRecorder.EVENT_CALL))
+				continue;
+
+			int depth = mRecording.getDepth(current);
+			if (depth <= level) {
+				stack.add(createFrame(current));
+				level = depth - 1;
+			}
+		}
+		return stack;
+	}
+
+	private IScriptDebugFrame createFrame(final long record) {
+		ExecutionRecording.Code code = mRecording.getCode(record);
+		String filename = (code == null) ? "" : getFilename(code);
+		String name = (code == null) ? "" : code.getName();
+		return new ReplayDebugFrame(filename, mRecording.getLine(record), name, record);
+	}
+
+	/**
+	 * Helper method mapping recorded filename to absolute filename.
+	 *
+	 * Scripts run by the engine might be recorded with their workspace path.
+	 */
+	private String getFilename(final ExecutionRecording.Code code) {
+		String filename = mFilenames.get(code.getFilename());
+		if (filename == null) {
+			filename = code.getFilename();
+			if (!new File(filename).isFile()) {
+				File file = new File(ResourcesPlugin.getWorkspace().getRoot().getLocation().toFile(), filename);
+				if (file.isFile())
+					filename = file.getAbsolutePath();
+			}
+			mFilenames.put(code.getFilename(), filename);
+		}
+		return filename;
+	}
+
+	/**
+	 * Helper method getting stand-in Thread object of recorded thread.
+	 */
+	private Thread getThread(final int thread) {
+		Thread result = mThreads.get(thread);
+		if (result == null) {
+			// never started, only identifies the recorded thread in the debug target
+			result = new Thread(mRecording.getThreadName(thread));
+			mThreads.put(thread, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method to raise event via dispatcher.
+	 */
+	private void fireDispatchEvent(final IDebugEvent event) {
+		final EventChannel channel = mChannel;
+		if (channel != null)
+			channel.post(event);
+	}
+}